@@ -0,0 +1,63 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileWriter;
+
+/**
+ * Reports the bytes each operation of a benchmark allocates. androidx.benchmark only reports
+ * the number of allocations, which counts a small wrapper the same as a large array. The
+ * operation is run a fixed number of times between two reads of the ART allocation counter,
+ * after the benchmark loop so it does not affect the timings. The counter covers every
+ * thread, so background work in the process adds to the result.
+ */
+public class BytesPerOp {
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    private static final String TAG = "BytesPerOp";
+    private static final int ITERATIONS = 100;
+
+    private BytesPerOp() {}
+
+    /**
+     * Measures the operation, then logs the result and writes it as JSON next to the benchmark results.
+     *
+     * @param benchmark the name the result is reported under
+     */
+    public static void report(String benchmark, Operation operation) throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            Log.w(TAG, "The allocation counter needs API 23, not measured: " + benchmark);
+            return;
+        }
+
+        long before = AllocatedBytes();
+        for (int x = 0; x < ITERATIONS; x++) {
+            operation.run();
+        }
+        long bytesPerOp = (AllocatedBytes() - before) / ITERATIONS;
+
+        JSObject result = new JSObject();
+        result.put("benchmark", benchmark);
+        result.put("iterations", ITERATIONS);
+        result.put("bytesPerOp", bytesPerOp);
+        Log.i(TAG, result.toString());
+
+        String outputDir = InstrumentationRegistry.getArguments().getString("additionalTestOutputDir");
+        if (outputDir != null) {
+            try (FileWriter writer = new FileWriter(new File(outputDir, TAG + "-" + benchmark + ".json"))) {
+                writer.write(result.toString());
+            }
+        }
+    }
+
+    private static long AllocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.proteansoftware.capacitor.firestore;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Benchmarks the conversions every read and write goes through, for documents of several
+ * shapes. Run on a device with -Pbenchmark, which tests a release build:
+ * <pre>
+ * ./gradlew connectedAndroidTest -Pbenchmark \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=com.proteansoftware.capacitor.firestore.ConversionBenchmark
+ * </pre>
+ * The time and allocation count of each benchmark are written as JSON to
+ * build/outputs/connected_android_test_additional_output, to compare between releases,
+ * along with the bytes allocated per operation measured by BytesPerOp.
+ */
+@RunWith(Parameterized.class)
+public class ConversionBenchmark {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> shapes() {
+        return Arrays.asList(
+            new Object[][] {
+                { "flat", new SyntheticDocuments(1, 20, SyntheticDocuments.DEFAULT_MIX, 1) },
+                { "wide", new SyntheticDocuments(1, 200, SyntheticDocuments.DEFAULT_MIX, 1) },
+                { "nested", new SyntheticDocuments(3, 6, SyntheticDocuments.DEFAULT_MIX, 1) },
+                { "deep", new SyntheticDocuments(6, 3, SyntheticDocuments.DEFAULT_MIX, 1) },
+            }
+        );
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final String name;
+    private final JSObject jsObject;
+    private final Map<String, Object> firestoreData;
+    private final JSArray queryConstraints;
+    // DocumentReference values are not generated, so the codec does not need a Firestore instance.
+    private final FirestoreValueCodec codec = new FirestoreValueCodec(null);
+    private final CapacitorFirestore implementation = new CapacitorFirestore();
+
+    public ConversionBenchmark(String name, SyntheticDocuments documents) {
+        this.name = name;
+        this.jsObject = documents.createJSObject();
+        this.firestoreData = documents.createFirestoreData();
+        this.queryConstraints = documents.createQueryConstraints();
+    }
+
+    /**
+     * The whole write path: PrepDataForSend converts the call data straight into Firestore values.
+     */
+    @Test
+    public void writeData() throws Exception {
+        BenchmarkState state = this.benchmarkRule.getState();
+        while (state.keepRunning()) {
+            this.codec.writeData(this.jsObject);
+        }
+        BytesPerOp.report(
+            this.getName("writeData"),
+            () -> this.codec.writeData(this.jsObject)
+        );
+    }
+
+    @Test
+    public void writeJSObject() throws Exception {
+        BenchmarkState state = this.benchmarkRule.getState();
+        while (state.keepRunning()) {
+            this.codec.write(this.jsObject);
+        }
+        BytesPerOp.report(
+            this.getName("writeJSObject"),
+            () -> this.codec.write(this.jsObject)
+        );
+    }
+
+    /**
+     * The conversion ConvertSnapshotToJSObject applies to the data of a snapshot.
+     */
+    @Test
+    public void readFirestoreData() throws Exception {
+        BenchmarkState state = this.benchmarkRule.getState();
+        while (state.keepRunning()) {
+            this.codec.readMap(this.firestoreData);
+        }
+        BytesPerOp.report(
+            this.getName("readFirestoreData"),
+            () -> this.codec.readMap(this.firestoreData)
+        );
+    }
+
+    @Test
+    public void convertQueryConstraints() throws Exception {
+        BenchmarkState state = this.benchmarkRule.getState();
+        while (state.keepRunning()) {
+            this.implementation.ConvertJSArrayToQueryConstraints(this.queryConstraints);
+        }
+        BytesPerOp.report(
+            this.getName("convertQueryConstraints"),
+            () -> this.implementation.ConvertJSArrayToQueryConstraints(this.queryConstraints)
+        );
+    }
+
+    private String getName(String benchmark) {
+        return "ConversionBenchmark." + benchmark + "[" + this.name + "]";
+    }
+}
@@ -0,0 +1,372 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.FirebaseFirestore;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Drives read, write and listener workloads through the plugin methods against a local
+ * Firestore emulator, so the listener registry, listener sharing, document cache and
+ * metrics are part of each run. Reports the p50/p99 latency, throughput, heap growth and
+ * plugin metrics of each workload. Skipped unless an emulator host is given, for example
+ * from an Android emulator with the Firestore emulator on the host:
+ * <pre>
+ * firebase emulators:start --only firestore --project demo-capacitor-firestore
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.emulatorHost=10.0.2.2 \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=com.proteansoftware.capacitor.firestore.EmulatorLoadTest
+ * </pre>
+ * The workload sizes can be changed with the writeBurst, collectionSize, collectionReads,
+ * listeners, listenerQueries, listenerWrites and listenerChurn arguments, and the port with
+ * emulatorPort. Each result is logged and written as JSON to
+ * build/outputs/connected_android_test_additional_output.
+ */
+@RunWith(JUnit4.class)
+public class EmulatorLoadTest {
+
+    private static final String TAG = "EmulatorLoadTest";
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private interface PluginMethodCall {
+        void invoke(PluginCall call);
+    }
+
+    private static class LatencyRecorder {
+
+        private final long[] samples;
+        private int count = 0;
+
+        private LatencyRecorder(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        private synchronized void record(long startedAt) {
+            if (this.count < this.samples.length) {
+                this.samples[this.count++] = System.nanoTime() - startedAt;
+            }
+        }
+
+        private synchronized void reset() {
+            this.count = 0;
+        }
+
+        private synchronized double percentileMs(double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+
+            long[] sorted = Arrays.copyOf(this.samples, this.count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(this.count - 1, Math.ceil(this.count * percentile) - 1);
+            return sorted[Math.max(index, 0)] / 1000000.0;
+        }
+    }
+
+    private CapacitorFirestorePlugin plugin = null;
+    private Context context;
+    private Bundle arguments;
+    private String collectionPrefix;
+
+    @Before
+    public void initialize() throws Exception {
+        this.arguments = InstrumentationRegistry.getArguments();
+        String emulatorHost = this.arguments.getString("emulatorHost");
+        Assume.assumeTrue("No emulatorHost argument, the Firestore emulator is not available", emulatorHost != null);
+
+        // The plugin is driven as the WebView would, without a bridge to read its config from.
+        this.context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Context context = this.context;
+        this.plugin =
+            new CapacitorFirestorePlugin() {
+                @Override
+                public Context getContext() {
+                    return context;
+                }
+            };
+
+        JSObject options = new JSObject();
+        options.put("projectId", "demo-capacitor-firestore");
+        options.put("applicationId", "1:000000000000:android:0000000000000000");
+        options.put("apiKey", "emulator");
+        options.put("emulatorHost", emulatorHost);
+        options.put("emulatorPort", this.getIntArgument("emulatorPort", 8080));
+        options.put("cacheMode", "memory");
+        options.put("useBackgroundExecutor", true);
+        options.put("documentCacheSizeBytes", 4 * 1024 * 1024);
+        options.put("metricsEnabled", true);
+        this.call("initializeFirestore", options, this.plugin::initializeFirestore);
+
+        // Every run writes to its own collections, so runs do not see each other's documents.
+        this.collectionPrefix = "loadtest-" + System.currentTimeMillis();
+    }
+
+    /**
+     * Firestore only accepts the emulator and cache settings before it is first used, so every
+     * test terminates its instance and deletes its app for the next test to start from new ones.
+     */
+    @After
+    public void terminate() throws Exception {
+        if (this.plugin == null) {
+            return;
+        }
+
+        this.call("clearAllSnapshotListeners", new JSObject(), this.plugin::clearAllSnapshotListeners);
+        for (FirebaseApp app : FirebaseApp.getApps(this.context)) {
+            Tasks.await(FirebaseFirestore.getInstance(app).terminate(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            app.delete();
+        }
+        this.plugin = null;
+    }
+
+    /**
+     * Measures setDocument calls until each is resolved, then waits for the backend to commit
+     * them all. Writes are resolved once handed to Firestore, so the throughput includes the
+     * commits but the latency does not.
+     */
+    @Test
+    public void writeBurst() throws Exception {
+        int writes = this.getIntArgument("writeBurst", 500);
+        JSObject data = this.createDocument();
+        LatencyRecorder latency = new LatencyRecorder(writes);
+        String collection = this.collectionPrefix + "-writes";
+
+        long heapBefore = this.usedHeap();
+        long startedAt = System.nanoTime();
+        for (int x = 0; x < writes; x++) {
+            JSObject options = new JSObject();
+            options.put("reference", collection + "/doc" + x);
+            options.put("data", data);
+
+            long writeStartedAt = System.nanoTime();
+            this.call("setDocument", options, this.plugin::setDocument);
+            latency.record(writeStartedAt);
+        }
+        this.call("waitForPendingWrites", new JSObject(), this.plugin::waitForPendingWrites);
+
+        this.report("writeBurst", "setDocument", writes, startedAt, latency, heapBefore);
+    }
+
+    @Test
+    public void largeCollectionGet() throws Exception {
+        int size = this.getIntArgument("collectionSize", 2000);
+        int reads = this.getIntArgument("collectionReads", 20);
+        String collection = this.seedCollection("-large", size);
+        LatencyRecorder latency = new LatencyRecorder(reads);
+
+        long heapBefore = this.usedHeap();
+        long startedAt = System.nanoTime();
+        for (int x = 0; x < reads; x++) {
+            JSObject options = new JSObject();
+            options.put("reference", collection);
+            options.put("source", "server");
+
+            long readStartedAt = System.nanoTime();
+            this.call("getCollection", options, this.plugin::getCollection);
+            latency.record(readStartedAt);
+        }
+
+        this.report("largeCollectionGet", "getCollection", reads, startedAt, latency, heapBefore);
+    }
+
+    /**
+     * Measures how long it takes every listener to see each write, once all are listening.
+     * The listeners are spread over a few queries, so the subscribers of each query share one
+     * native listener.
+     */
+    @Test
+    public void concurrentListeners() throws Exception {
+        int listenerCount = this.getIntArgument("listeners", 100);
+        int queries = this.getIntArgument("listenerQueries", 10);
+        int writes = this.getIntArgument("listenerWrites", 20);
+        String collection = this.seedCollection("-listeners", 10);
+        LatencyRecorder latency = new LatencyRecorder(listenerCount * (writes + 1));
+        AtomicReference<CountDownLatch> delivered = new AtomicReference<>(new CountDownLatch(listenerCount));
+        AtomicLong writeStartedAt = new AtomicLong(System.nanoTime());
+        // -1 until the first snapshots are in, then the revision of the write being waited for.
+        AtomicInteger revision = new AtomicInteger(-1);
+
+        long heapBefore = this.usedHeap();
+        long startedAt = System.nanoTime();
+        for (int x = 0; x < listenerCount; x++) {
+            JSObject options = new JSObject();
+            options.put("reference", collection);
+            // Subscribers of the same query share its native listener.
+            JSObject limit = new JSObject().put("type", "limit").put("limit", 1000 + x % queries);
+            options.put("queryConstraints", new JSArray().put(limit));
+
+            this.plugin.addCollectionSnapshotListener(
+                new RecordingPluginCall(
+                    "addCollectionSnapshotListener",
+                    options,
+                    result -> {
+                        int expected = revision.get();
+                        if (expected >= 0 && !HasRevision(result, expected)) {
+                            return;
+                        }
+                        latency.record(writeStartedAt.get());
+                        delivered.get().countDown();
+                    }
+                )
+            );
+        }
+        this.await(delivered.get());
+
+        // Only the fan out of the writes is recorded, not the first snapshots.
+        latency.reset();
+        for (int x = 0; x < writes; x++) {
+            JSObject revisionData = this.createDocument();
+            revisionData.put("revision", (long) x);
+            JSObject options = new JSObject();
+            options.put("reference", collection + "/doc" + (x % 10));
+            options.put("data", revisionData);
+
+            delivered.set(new CountDownLatch(listenerCount));
+            writeStartedAt.set(System.nanoTime());
+            revision.set(x);
+            this.call("setDocument", options, this.plugin::setDocument);
+            this.await(delivered.get());
+        }
+
+        int operations = listenerCount * writes;
+        this.report("concurrentListeners", "addCollectionSnapshotListener", operations, startedAt, latency, heapBefore);
+    }
+
+    private static boolean HasRevision(JSObject result, long revision) {
+        JSONArray collection = result.optJSONArray("collection");
+        for (int x = 0; collection != null && x < collection.length(); x++) {
+            JSONObject data = collection.optJSONObject(x).optJSONObject("data");
+            if (data != null && data.optLong("revision", -1) == revision) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Measures adding a listener until its first snapshot, then removing it, over and over.
+     * Heap growth here points at listeners that are not released.
+     */
+    @Test
+    public void listenerChurn() throws Exception {
+        int cycles = this.getIntArgument("listenerChurn", 500);
+        String collection = this.seedCollection("-churn", 20);
+        LatencyRecorder latency = new LatencyRecorder(cycles);
+
+        long heapBefore = this.usedHeap();
+        long startedAt = System.nanoTime();
+        for (int x = 0; x < cycles; x++) {
+            CountDownLatch firstSnapshot = new CountDownLatch(1);
+            JSObject options = new JSObject();
+            options.put("reference", collection);
+
+            long cycleStartedAt = System.nanoTime();
+            RecordingPluginCall listener = new RecordingPluginCall(
+                "addCollectionSnapshotListener",
+                options,
+                result -> firstSnapshot.countDown()
+            );
+            this.plugin.addCollectionSnapshotListener(listener);
+            this.await(firstSnapshot);
+            JSObject remove = new JSObject().put("callbackId", listener.getCallbackId());
+            this.call("removeSnapshotListener", remove, this.plugin::removeSnapshotListener);
+            latency.record(cycleStartedAt);
+        }
+
+        this.report("listenerChurn", "addCollectionSnapshotListener", cycles, startedAt, latency, heapBefore);
+    }
+
+    private JSObject createDocument() {
+        return new SyntheticDocuments(2, 10, SyntheticDocuments.DEFAULT_MIX, 1).createJSObject();
+    }
+
+    private String seedCollection(String suffix, int size) throws Exception {
+        String collection = this.collectionPrefix + suffix;
+        JSObject data = this.createDocument();
+        JSArray operations = new JSArray();
+        for (int x = 0; x < size; x++) {
+            JSObject operation = new JSObject();
+            operation.put("type", "set");
+            operation.put("reference", collection + "/doc" + x);
+            operation.put("data", data);
+            operations.put(operation);
+        }
+
+        this.call("writeBatch", new JSObject().put("operations", operations), this.plugin::writeBatch);
+        return collection;
+    }
+
+    /**
+     * Calls the plugin method and waits for it to be resolved.
+     */
+    private JSObject call(String methodName, JSObject data, PluginMethodCall method) throws InterruptedException {
+        RecordingPluginCall call = new RecordingPluginCall(methodName, data);
+        method.invoke(call);
+        return call.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("Timed out waiting for snapshots");
+        }
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private int getIntArgument(String name, int defaultValue) {
+        String value = this.arguments.getString(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * Logs the workload results along with the plugin metrics of the method, and writes them as JSON.
+     */
+    private void report(String workload, String method, int operations, long startedAt, LatencyRecorder latency, long heapBefore)
+        throws Exception {
+        double seconds = (System.nanoTime() - startedAt) / 1000000000.0;
+        JSObject metrics = this.call("getMetrics", new JSObject(), this.plugin::getMetrics);
+
+        JSObject result = new JSObject();
+        result.put("workload", workload);
+        result.put("operations", operations);
+        result.put("seconds", seconds);
+        result.put("operationsPerSecond", operations / seconds);
+        result.put("p50Ms", latency.percentileMs(0.5));
+        result.put("p99Ms", latency.percentileMs(0.99));
+        result.put("heapGrowthBytes", this.usedHeap() - heapBefore);
+        result.put("metrics", metrics.getJSONObject("methods").opt(method));
+        Log.i(TAG, result.toString());
+
+        String outputDir = this.arguments.getString("additionalTestOutputDir");
+        if (outputDir != null) {
+            try (FileWriter writer = new FileWriter(new File(outputDir, TAG + "-" + workload + ".json"))) {
+                writer.write(result.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.proteansoftware.capacitor.firestore;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A PluginCall that records what the plugin resolves or rejects it with, instead of sending
+ * it to the WebView, so plugin methods can be called without a bridge. Calls kept alive,
+ * such as snapshot listeners, pass each result to a ResolveListener instead.
+ */
+public class RecordingPluginCall extends PluginCall {
+
+    public interface ResolveListener {
+        void onResolve(JSObject result);
+    }
+
+    private static final AtomicInteger nextCallbackId = new AtomicInteger();
+
+    // Results, or the AssertionError of a rejection, in the order they were sent.
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+    private final ResolveListener listener;
+
+    public RecordingPluginCall(String methodName, JSObject data) {
+        this(methodName, data, null);
+    }
+
+    /**
+     * @param listener receives every result, which are then not recorded for await
+     */
+    public RecordingPluginCall(String methodName, JSObject data, ResolveListener listener) {
+        super(null, "CapacitorFirestore", "recording-" + nextCallbackId.incrementAndGet(), methodName, data);
+        this.listener = listener;
+    }
+
+    @Override
+    public void resolve(JSObject data) {
+        JSObject result = data != null ? data : new JSObject();
+        if (this.listener != null) {
+            this.listener.onResolve(result);
+        } else {
+            this.results.add(result);
+        }
+    }
+
+    @Override
+    public void resolve() {
+        this.resolve(null);
+    }
+
+    @Override
+    public void reject(String msg, String code, Exception ex, JSObject data) {
+        this.results.add(new AssertionError(this.getMethodName() + " was rejected: " + msg, ex));
+    }
+
+    @Override
+    public void release(Bridge bridge) {
+        this.setKeepAlive(false);
+    }
+
+    /**
+     * Waits for the next result, failing if the call was rejected instead.
+     */
+    public JSObject await(long timeout, TimeUnit unit) throws InterruptedException {
+        Object result = this.results.poll(timeout, unit);
+        if (result == null) {
+            throw new AssertionError("Timed out waiting for " + this.getMethodName());
+        } else if (result instanceof AssertionError) {
+            throw (AssertionError) result;
+        }
+        return (JSObject) result;
+    }
+}
@@ -0,0 +1,125 @@
+package com.proteansoftware.capacitor.firestore;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.MemoryCacheSettings;
+import com.google.firebase.firestore.MemoryLruGcSettings;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Benchmarks converting real Firestore snapshots into the payloads sent to the WebView, with
+ * ConvertSnapshotToJSObject. Unlike ConversionBenchmark, this includes reading the values out
+ * of the snapshots. The documents are written to a memory cache with the network disabled and
+ * read back from it, so no backend is needed.
+ * Run on a device with -Pbenchmark, like ConversionBenchmark.
+ */
+@RunWith(Parameterized.class)
+public class SnapshotBenchmark {
+
+    private static final String APP_NAME = "SnapshotBenchmark";
+    private static final int DOCUMENTS = 50;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> shapes() {
+        return ConversionBenchmark.shapes();
+    }
+
+    private static FirebaseFirestore db = null;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final String name;
+    private final SyntheticDocuments documents;
+    private CapacitorFirestore implementation;
+    private DocumentSnapshot documentSnapshot;
+    private QuerySnapshot querySnapshot;
+
+    public SnapshotBenchmark(String name, SyntheticDocuments documents) {
+        this.name = name;
+        this.documents = documents;
+    }
+
+    @Before
+    public void initialize() throws Exception {
+        FirebaseFirestore firestore = GetFirestore();
+        CollectionReference collection = firestore.collection("benchmark-" + this.name);
+        Map<String, Object> data = this.documents.createFirestoreData();
+        for (int x = 0; x < DOCUMENTS; x++) {
+            // Applied to the cache at once, the Task only completes once the backend acknowledges the write.
+            collection.document("doc" + x).set(data);
+        }
+
+        this.implementation = new CapacitorFirestore(firestore);
+        this.querySnapshot = Tasks.await(collection.get(Source.CACHE), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        this.documentSnapshot = this.querySnapshot.getDocuments().get(0);
+    }
+
+    private static synchronized FirebaseFirestore GetFirestore() throws Exception {
+        if (db != null) {
+            return db;
+        }
+
+        FirebaseOptions options = new FirebaseOptions.Builder()
+            .setApplicationId("1:000000000000:android:0000000000000000")
+            .setApiKey("benchmark")
+            .setProjectId("demo-capacitor-firestore")
+            .build();
+        FirebaseApp app = FirebaseApp.initializeApp(InstrumentationRegistry.getInstrumentation().getTargetContext(), options, APP_NAME);
+
+        db = FirebaseFirestore.getInstance(app);
+        MemoryCacheSettings cacheSettings = MemoryCacheSettings
+            .newBuilder()
+            .setGcSettings(MemoryLruGcSettings.newBuilder().build())
+            .build();
+        db.setFirestoreSettings(new FirebaseFirestoreSettings.Builder().setLocalCacheSettings(cacheSettings).build());
+        Tasks.await(db.disableNetwork(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return db;
+    }
+
+    @Test
+    public void convertDocumentSnapshot() throws Exception {
+        BenchmarkState state = this.benchmarkRule.getState();
+        while (state.keepRunning()) {
+            this.implementation.ConvertSnapshotToJSObject(this.documentSnapshot);
+        }
+        BytesPerOp.report(
+            this.getName("convertDocumentSnapshot"),
+            () -> this.implementation.ConvertSnapshotToJSObject(this.documentSnapshot)
+        );
+    }
+
+    @Test
+    public void convertQuerySnapshot() throws Exception {
+        BenchmarkState state = this.benchmarkRule.getState();
+        while (state.keepRunning()) {
+            this.implementation.ConvertQuerySnapshotToJSObject(this.querySnapshot);
+        }
+        BytesPerOp.report(
+            this.getName("convertQuerySnapshot"),
+            () -> this.implementation.ConvertQuerySnapshotToJSObject(this.querySnapshot)
+        );
+    }
+
+    private String getName(String benchmark) {
+        return "SnapshotBenchmark." + benchmark + "[" + this.name + "]";
+    }
+}
@@ -0,0 +1,238 @@
+package com.proteansoftware.capacitor.firestore;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.GeoPoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.json.JSONObject;
+
+/**
+ * Generates documents of a given shape, both as the JSObject the WebView sends and as the
+ * map Firestore returns. The same seed always generates the same documents. Arrays are not
+ * nested directly in arrays, as Firestore does not support that.
+ */
+public class SyntheticDocuments {
+
+    public enum ValueType {
+        STRING,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        NULL,
+        TIMESTAMP,
+        GEOPOINT,
+        BLOB,
+        ARRAY,
+        MAP,
+    }
+
+    /**
+     * Mostly scalar values with a few of every special type.
+     */
+    public static final int[] DEFAULT_MIX = { 30, 15, 10, 5, 2, 5, 2, 1, 15, 15 };
+
+    private final int depth;
+    private final int width;
+    private final int[] mix;
+    private final int mixTotal;
+    private final long seed;
+
+    /**
+     * @param depth how many levels of maps and arrays may be nested, 1 for a flat document
+     * @param width the number of fields in each map and elements in each array
+     * @param mix the relative weight of each ValueType, in declaration order
+     */
+    public SyntheticDocuments(int depth, int width, int[] mix, long seed) {
+        if (mix.length != ValueType.values().length) {
+            throw new IllegalArgumentException("mix must have a weight for each ValueType");
+        }
+
+        int total = 0;
+        for (int weight : mix) {
+            total += weight;
+        }
+
+        this.depth = depth;
+        this.width = width;
+        this.mix = mix;
+        this.mixTotal = total;
+        this.seed = seed;
+    }
+
+    public JSObject createJSObject() {
+        return this.createJSObject(new Random(this.seed), this.depth);
+    }
+
+    public Map<String, Object> createFirestoreData() {
+        return this.createFirestoreData(new Random(this.seed), this.depth);
+    }
+
+    /**
+     * Creates where constraints on the generated fields, combined with orderBy, limit and
+     * startAfter constraints, nested in or/and constraints up to the depth.
+     */
+    public JSArray createQueryConstraints() {
+        return this.createQueryConstraints(new Random(this.seed), this.depth);
+    }
+
+    private JSObject createJSObject(Random random, int depth) {
+        JSObject object = new JSObject();
+        for (int x = 0; x < this.width; x++) {
+            object.put("field" + x, this.createJSValue(random, depth, false));
+        }
+        return object;
+    }
+
+    private Object createJSValue(Random random, int depth, boolean inArray) {
+        switch (this.nextType(random, depth, inArray)) {
+            case STRING:
+                return "value-" + random.nextInt(100000);
+            case LONG:
+                return random.nextLong();
+            case DOUBLE:
+                return random.nextDouble() * 1000;
+            case BOOLEAN:
+                return random.nextBoolean();
+            case TIMESTAMP:
+                JSObject timestamp = new JSObject();
+                timestamp.put("specialType", "Timestamp");
+                timestamp.put("seconds", 1700000000L + random.nextInt(100000000));
+                timestamp.put("nanoseconds", random.nextInt(1000000000));
+                return timestamp;
+            case GEOPOINT:
+                JSObject geoPoint = new JSObject();
+                geoPoint.put("specialType", "GeoPoint");
+                geoPoint.put("latitude", random.nextDouble() * 180 - 90);
+                geoPoint.put("longitude", random.nextDouble() * 360 - 180);
+                return geoPoint;
+            case BLOB:
+                JSObject blob = new JSObject();
+                blob.put("specialType", "Blob");
+                blob.put("base64", "c3ludGhldGljIGRvY3VtZW50");
+                return blob;
+            case ARRAY:
+                JSArray array = new JSArray();
+                for (int x = 0; x < this.width; x++) {
+                    array.put(this.createJSValue(random, depth - 1, true));
+                }
+                return array;
+            case MAP:
+                return this.createJSObject(random, depth - 1);
+            default:
+                return JSONObject.NULL;
+        }
+    }
+
+    private Map<String, Object> createFirestoreData(Random random, int depth) {
+        Map<String, Object> map = new HashMap<>();
+        for (int x = 0; x < this.width; x++) {
+            map.put("field" + x, this.createFirestoreValue(random, depth, false));
+        }
+        return map;
+    }
+
+    private Object createFirestoreValue(Random random, int depth, boolean inArray) {
+        switch (this.nextType(random, depth, inArray)) {
+            case STRING:
+                return "value-" + random.nextInt(100000);
+            case LONG:
+                return random.nextLong();
+            case DOUBLE:
+                return random.nextDouble() * 1000;
+            case BOOLEAN:
+                return random.nextBoolean();
+            case TIMESTAMP:
+                return new Timestamp(1700000000L + random.nextInt(100000000), random.nextInt(1000000000));
+            case GEOPOINT:
+                return new GeoPoint(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            case BLOB:
+                return Blob.fromBytes("synthetic document".getBytes());
+            case ARRAY:
+                List<Object> list = new ArrayList<>();
+                for (int x = 0; x < this.width; x++) {
+                    list.add(this.createFirestoreValue(random, depth - 1, true));
+                }
+                return list;
+            case MAP:
+                return this.createFirestoreData(random, depth - 1);
+            default:
+                return null;
+        }
+    }
+
+    private JSArray createQueryConstraints(Random random, int depth) {
+        JSArray constraints = new JSArray();
+        for (int x = 0; x < this.width; x++) {
+            if (depth > 1 && x == 0) {
+                JSObject composite = new JSObject();
+                composite.put("type", random.nextBoolean() ? "or" : "and");
+                composite.put("queryConstraints", this.createQueryConstraints(random, depth - 1));
+                constraints.put(composite);
+                continue;
+            }
+
+            JSObject where = new JSObject();
+            where.put("type", "where");
+            where.put("fieldPath", "field" + x);
+            where.put("opStr", "==");
+            where.put("value", this.createScalar(random));
+            constraints.put(where);
+        }
+
+        JSObject orderBy = new JSObject();
+        orderBy.put("type", "orderBy");
+        orderBy.put("fieldPath", "field0");
+        orderBy.put("direction", "desc");
+        constraints.put(orderBy);
+
+        JSObject startAfter = new JSObject();
+        startAfter.put("type", "startAfter");
+        startAfter.put("values", new JSArray().put(this.createScalar(random)));
+        constraints.put(startAfter);
+
+        JSObject limit = new JSObject();
+        limit.put("type", "limit");
+        limit.put("limit", 100);
+        constraints.put(limit);
+
+        return constraints;
+    }
+
+    private Object createScalar(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return "value-" + random.nextInt(100000);
+            case 1:
+                return random.nextLong();
+            default:
+                return random.nextDouble() * 1000;
+        }
+    }
+
+    private ValueType nextType(Random random, int depth, boolean inArray) {
+        ValueType[] types = ValueType.values();
+        while (true) {
+            int pick = random.nextInt(this.mixTotal);
+            for (int x = 0; x < this.mix.length; x++) {
+                pick -= this.mix[x];
+                if (pick < 0) {
+                    ValueType type = types[x];
+                    // Maps and arrays are not nested deeper than the depth.
+                    if (depth <= 1 && (type == ValueType.ARRAY || type == ValueType.MAP)) {
+                        break;
+                    }
+                    if (inArray && type == ValueType.ARRAY) {
+                        break;
+                    }
+                    return type;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.proteansoftware.capacitor.firestore;
+
+import com.getcapacitor.JSObject;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SnapshotMetadata;
+import com.google.firebase.firestore.Source;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how the reads were served by the Firestore local cache. Firestore does not report
+ * its garbage collection, so this is the nearest measure of how well the cache settings fit:
+ * a read that could not be served from the cache, once its data was evicted or never
+ * cached, is counted as a miss.
+ */
+public class CacheReadStats {
+
+    private final AtomicLong fromCache = new AtomicLong();
+    private final AtomicLong fromServer = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Counts the read once it completes, and returns it.
+     */
+    public <T> Task<T> record(Task<T> read, Source source) {
+        read.addOnCompleteListener(
+            Runnable::run,
+            task -> {
+                if (task.isSuccessful()) {
+                    this.recordResult(task.getResult());
+                } else if (source != Source.SERVER && isUnavailable(task.getException())) {
+                    // Firestore fails reads it cannot serve from the cache while offline.
+                    this.misses.incrementAndGet();
+                }
+            }
+        );
+        return read;
+    }
+
+    private void recordResult(Object result) {
+        SnapshotMetadata metadata = null;
+        if (result instanceof DocumentSnapshot) {
+            metadata = ((DocumentSnapshot) result).getMetadata();
+        } else if (result instanceof QuerySnapshot) {
+            metadata = ((QuerySnapshot) result).getMetadata();
+        }
+
+        if (metadata != null) {
+            (metadata.isFromCache() ? this.fromCache : this.fromServer).incrementAndGet();
+        }
+    }
+
+    private static boolean isUnavailable(Exception error) {
+        return (
+            error instanceof FirebaseFirestoreException &&
+            ((FirebaseFirestoreException) error).getCode() == FirebaseFirestoreException.Code.UNAVAILABLE
+        );
+    }
+
+    public JSObject toJSObject() {
+        JSObject stats = new JSObject();
+        stats.put("fromCache", this.fromCache.get());
+        stats.put("fromServer", this.fromServer.get());
+        stats.put("misses", this.misses.get());
+        return stats;
+    }
+}
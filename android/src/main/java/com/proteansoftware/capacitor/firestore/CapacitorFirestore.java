@@ -1,36 +1,105 @@
 package com.proteansoftware.capacitor.firestore;
 
 import android.content.Context;
+import android.util.LruCache;
 import androidx.annotation.NonNull;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskExecutors;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.AggregateField;
+import com.google.firebase.firestore.AggregateQuery;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.Filter;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.LocalCacheSettings;
+import com.google.firebase.firestore.MemoryCacheSettings;
+import com.google.firebase.firestore.MemoryEagerGcSettings;
+import com.google.firebase.firestore.MemoryLruGcSettings;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.PersistentCacheSettings;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.SnapshotMetadata;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.TransactionOptions;
+import com.google.firebase.firestore.WriteBatch;
+import java.io.File;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class CapacitorFirestore {
 
+    /**
+     * The maximum number of operations Firestore accepts in a single WriteBatch.
+     */
+    public static final int MAX_BATCH_OPERATIONS = 500;
+
+    /**
+     * The number of page cursors kept for getCollectionPage, least recently used cursors are dropped first.
+     */
+    private static final int MAX_PAGE_CURSORS = 100;
+
+    /**
+     * The number of compiled queries kept by GetQuery, least recently used queries are dropped first.
+     */
+    private static final int MAX_CACHED_QUERIES = 50;
+
+    /**
+     * The database FirebaseFirestore.getInstance(app) opens.
+     */
+    private static final String DEFAULT_DATABASE_ID = "(default)";
+
+    private Context context = null;
     private FirebaseApp app = null;
     private FirebaseFirestore db = null;
+    private FirestoreValueCodec codec = null;
+    private CacheReadStats cacheReadStats = new CacheReadStats();
+    private ExecutorService backgroundExecutor = null;
+    private Executor callbackExecutor = TaskExecutors.MAIN_THREAD;
+    private String cacheMode = "persistent";
+    private long cacheSizeBytes = FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED;
+    private String emulatorHost = null;
+    private int emulatorPort = 0;
+    private final LruCache<String, CollectionPageCursor> pageCursors = new LruCache<>(MAX_PAGE_CURSORS);
+    private final LruCache<String, Query> queryCache = new LruCache<>(MAX_CACHED_QUERIES);
+
+    public CapacitorFirestore() {}
+
+    /**
+     * Uses the given Firestore instance as is, without initializing an app. For tests.
+     */
+    CapacitorFirestore(FirebaseFirestore db) {
+        this.db = db;
+        this.codec = new FirestoreValueCodec(db);
+    }
 
     public void Initialize(Context context, String projectId, String applicationId, String apiKey) throws Exception {
         if (context == null) {
@@ -61,6 +130,8 @@ public class CapacitorFirestore {
 
         var apps = FirebaseApp.getApps(context);
 
+        this.context = context;
+
         if (apps.isEmpty()) {
             this.app = FirebaseApp.initializeApp(context, options, "CapacitorFirestore");
         } else {
@@ -70,6 +141,46 @@ public class CapacitorFirestore {
         this.InitializeFirestore();
     }
 
+    /**
+     * Routes snapshot listener and Task callbacks, and the conversion work done in them,
+     * to a dedicated background thread instead of the main thread.
+     */
+    public void setUseBackgroundExecutor(boolean useBackgroundExecutor) {
+        if (useBackgroundExecutor) {
+            if (this.backgroundExecutor == null) {
+                this.backgroundExecutor = Executors.newSingleThreadExecutor();
+            }
+            this.callbackExecutor = this.backgroundExecutor;
+        } else {
+            this.callbackExecutor = TaskExecutors.MAIN_THREAD;
+        }
+    }
+
+    /**
+     * Sets the local cache used by the next Initialize call.
+     * @param cacheMode "memory" or "persistent"
+     * @param cacheSizeBytes the LRU garbage collection threshold, or CACHE_SIZE_UNLIMITED to disable
+     *                       garbage collection for a persistent cache, or use eager garbage collection
+     *                       for a memory cache
+     */
+    public void setCacheSettings(String cacheMode, long cacheSizeBytes) {
+        this.cacheMode = cacheMode;
+        this.cacheSizeBytes = cacheSizeBytes;
+    }
+
+    /**
+     * Sets the Firestore emulator used by the next Initialize call.
+     * @param host the emulator host, or null to use the Firestore backend
+     */
+    public void setEmulator(String host, int port) {
+        this.emulatorHost = host;
+        this.emulatorPort = port;
+    }
+
+    public Executor getCallbackExecutor() {
+        return this.callbackExecutor;
+    }
+
     public void signInWithCustomToken(String token, @NonNull OnCompleteListener<AuthResult> completeListener) {
         FirebaseAuth auth = FirebaseAuth.getInstance(this.app);
         auth.signInWithCustomToken(token).addOnCompleteListener(completeListener);
@@ -81,24 +192,46 @@ public class CapacitorFirestore {
     }
 
     public ListenerRegistration addDocumentSnapshotListener(String documentReference, @NonNull EventListener<DocumentSnapshot> listener) {
-        return this.db.document(documentReference).addSnapshotListener(listener);
+        return this.addDocumentSnapshotListener(documentReference, MetadataChanges.EXCLUDE, listener);
+    }
+
+    public ListenerRegistration addDocumentSnapshotListener(
+        String documentReference,
+        MetadataChanges metadataChanges,
+        @NonNull EventListener<DocumentSnapshot> listener
+    ) {
+        return this.db.document(documentReference).addSnapshotListener(this.callbackExecutor, metadataChanges, listener);
     }
 
     public Task<DocumentSnapshot> getDocument(String documentReference) {
-        return this.db.document(documentReference).get();
+        return this.getDocument(documentReference, Source.DEFAULT);
     }
 
-    public Task<Void> updateDocument(String documentReference, Map<String, Object> data) throws Exception {
-        data = this.PrepDataForSend(data);
-        return this.db.document(documentReference).update(data);
+    public Task<DocumentSnapshot> getDocument(String documentReference, Source source) {
+        return this.cacheReadStats.record(this.db.document(documentReference).get(source), source);
+    }
+
+    /**
+     * Starts a read for every document at once. The tasks are returned in the same order as the references.
+     */
+    public List<Task<DocumentSnapshot>> getDocuments(List<String> documentReferences, Source source) {
+        List<Task<DocumentSnapshot>> reads = new ArrayList<>(documentReferences.size());
+        for (String documentReference : documentReferences) {
+            reads.add(this.cacheReadStats.record(this.db.document(documentReference).get(source), source));
+        }
+        return reads;
     }
 
-    public Task<Void> setDocument(String documentReference, Map<String, Object> data, Boolean merge) throws Exception {
-        data = this.PrepDataForSend(data);
+    public Task<Void> updateDocument(String documentReference, JSONObject data) throws Exception {
+        return this.db.document(documentReference).update(this.PrepDataForSend(data));
+    }
+
+    public Task<Void> setDocument(String documentReference, JSONObject data, Boolean merge) throws Exception {
+        Map<String, Object> preparedData = this.PrepDataForSend(data);
         if (merge) {
-            return this.db.document(documentReference).set(data, SetOptions.merge());
+            return this.db.document(documentReference).set(preparedData, SetOptions.merge());
         } else {
-            return this.db.document(documentReference).set(data);
+            return this.db.document(documentReference).set(preparedData);
         }
     }
 
@@ -106,225 +239,908 @@ public class CapacitorFirestore {
         return this.db.document(documentReference).delete();
     }
 
-    public Task<Void> addDocument(String collectionReference, String docId, Map<String, Object> data) throws Exception {
-        data = this.PrepDataForSend(data);
-        return this.db.collection(collectionReference).document(docId).set(data);
+    public Task<Void> addDocument(String collectionReference, String docId, JSONObject data) throws Exception {
+        return this.db.collection(collectionReference).document(docId).set(this.PrepDataForSend(data));
     }
 
-    public Task<QuerySnapshot> getCollection(String collectionReference, List<JSQueryConstraints> queryConstraints) throws Exception {
-        Query collection = this.db.collection(collectionReference);
+    /**
+     * Commits the given operations using WriteBatch, split into chunks of at most
+     * MAX_BATCH_OPERATIONS operations. Returns one Task per committed chunk, in order.
+     * Every operation is validated and converted before any chunk is committed, so an
+     * invalid operation fails the call without writing anything.
+     */
+    public List<Task<Void>> commitBatch(List<JSBatchOperation> operations) throws Exception {
+        List<Map<String, Object>> data = new ArrayList<>(operations.size());
+        for (JSBatchOperation operation : operations) {
+            String type = operation.getType();
+            if (!type.equals("set") && !type.equals("update") && !type.equals("delete")) {
+                throw new Exception("batch operation not support: " + type);
+            }
 
-        for (JSQueryConstraints queryConstraint : queryConstraints) {
-            String operation = queryConstraint.getOperation();
+            if (type.equals("delete")) {
+                data.add(null);
+            } else if (operation.getData() == null) {
+                throw new Exception("batch operation data must not be null: " + type);
+            } else {
+                data.add(this.PrepDataForSend(operation.getData()));
+            }
+        }
 
-            switch (operation) {
-                case "==":
-                    collection = collection.whereEqualTo(queryConstraint.getFieldPath(), queryConstraint.getValue());
-                    break;
-                case ">=":
-                    collection = collection.whereGreaterThanOrEqualTo(queryConstraint.getFieldPath(), queryConstraint.getValue());
-                    break;
-                case "<=":
-                    collection = collection.whereLessThanOrEqualTo(queryConstraint.getFieldPath(), queryConstraint.getValue());
-                    break;
-                case ">":
-                    collection = collection.whereGreaterThan(queryConstraint.getFieldPath(), queryConstraint.getValue());
+        List<WriteBatch> batches = new ArrayList<>();
+        for (int start = 0; start < operations.size(); start += MAX_BATCH_OPERATIONS) {
+            int end = Math.min(start + MAX_BATCH_OPERATIONS, operations.size());
+            WriteBatch batch = this.db.batch();
+
+            for (int x = start; x < end; x++) {
+                JSBatchOperation operation = operations.get(x);
+                DocumentReference document = this.db.document(operation.getReference());
+
+                switch (operation.getType()) {
+                    case "set":
+                        if (operation.getMerge()) {
+                            batch.set(document, data.get(x), SetOptions.merge());
+                        } else {
+                            batch.set(document, data.get(x));
+                        }
+                        break;
+                    case "update":
+                        batch.update(document, data.get(x));
+                        break;
+                    default:
+                        batch.delete(document);
+                        break;
+                }
+            }
+
+            batches.add(batch);
+        }
+
+        List<Task<Void>> commits = new ArrayList<>(batches.size());
+        for (WriteBatch batch : batches) {
+            commits.add(batch.commit());
+        }
+
+        return commits;
+    }
+
+    /**
+     * Runs the operations in a transaction. Every document in reads, and every document an
+     * operation has a condition on, is read first. An operation whose condition does not hold
+     * fails the transaction. Resolves with the snapshots of reads, in order. Each run of the
+     * transaction, including retries after contention, increments attempts.
+     */
+    public Task<List<DocumentSnapshot>> runTransaction(
+        List<String> reads,
+        List<JSTransactionOperation> operations,
+        int maxAttempts,
+        AtomicInteger attempts
+    ) throws Exception {
+        for (JSTransactionOperation operation : operations) {
+            String type = operation.getType();
+            switch (type) {
+                case "set":
+                case "update":
+                    if (operation.getData() == null) {
+                        throw new Exception("transaction operation data must not be null: " + type);
+                    }
                     break;
-                case "<":
-                    collection = collection.whereLessThan(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "increment":
+                    if (operation.getFieldPath() == null || operation.getAmount() == null) {
+                        throw new Exception("transaction increment requires fieldPath and value: " + operation.getReference());
+                    }
                     break;
-                case "array-contains":
-                    collection = collection.whereArrayContains(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "delete":
                     break;
                 default:
-                    throw new Exception("query operation not support: " + operation);
+                    throw new Exception("transaction operation not support: " + type);
+            }
+        }
+
+        // The codec can throw checked exceptions, which the transaction function cannot.
+        List<Map<String, Object>> data = new ArrayList<>(operations.size());
+        List<Object> conditionValues = new ArrayList<>(operations.size());
+        for (JSTransactionOperation operation : operations) {
+            data.add(operation.getData() != null ? this.PrepDataForSend(operation.getData()) : null);
+            conditionValues.add(operation.getConditionFieldPath() != null ? this.codec.write(operation.getConditionValue()) : null);
+        }
+
+        TransactionOptions options = new TransactionOptions.Builder().setMaxAttempts(maxAttempts).build();
+
+        return this.db.runTransaction(
+            options,
+            transaction -> {
+                attempts.incrementAndGet();
+
+                // Firestore requires every read to happen before the first write.
+                Map<String, DocumentSnapshot> snapshots = new HashMap<>();
+                for (String read : reads) {
+                    if (!snapshots.containsKey(read)) {
+                        snapshots.put(read, transaction.get(this.db.document(read)));
+                    }
+                }
+                for (JSTransactionOperation operation : operations) {
+                    if (operation.hasCondition() && !snapshots.containsKey(operation.getReference())) {
+                        snapshots.put(operation.getReference(), transaction.get(this.db.document(operation.getReference())));
+                    }
+                }
+
+                for (int x = 0; x < operations.size(); x++) {
+                    JSTransactionOperation operation = operations.get(x);
+                    DocumentSnapshot snapshot = snapshots.get(operation.getReference());
+                    if (operation.hasCondition() && !this.MatchesCondition(snapshot, operation, conditionValues.get(x))) {
+                        // Unchecked, so Firestore fails the transaction instead of retrying it.
+                        throw new IllegalStateException("transaction condition failed: " + operation.getReference());
+                    }
+                }
+
+                for (int x = 0; x < operations.size(); x++) {
+                    JSTransactionOperation operation = operations.get(x);
+                    DocumentReference document = this.db.document(operation.getReference());
+                    switch (operation.getType()) {
+                        case "set":
+                            if (operation.getMerge()) {
+                                transaction.set(document, data.get(x), SetOptions.merge());
+                            } else {
+                                transaction.set(document, data.get(x));
+                            }
+                            break;
+                        case "update":
+                            transaction.update(document, data.get(x));
+                            break;
+                        case "delete":
+                            transaction.delete(document);
+                            break;
+                        case "increment":
+                            FieldPath fieldPath = FieldPath.of(operation.getFieldPath().split("\\."));
+                            transaction.update(document, fieldPath, FirestoreValueCodec.increment(operation.getAmount()));
+                            break;
+                    }
+                }
+
+                List<DocumentSnapshot> result = new ArrayList<>(reads.size());
+                for (String read : reads) {
+                    result.add(snapshots.get(read));
+                }
+                return result;
+            }
+        );
+    }
+
+    public Task<QuerySnapshot> getCollection(String collectionReference, JSArray queryConstraints) throws Exception {
+        return this.getCollection(collectionReference, queryConstraints, Source.DEFAULT);
+    }
+
+    public Task<QuerySnapshot> getCollection(String collectionReference, JSArray queryConstraints, Source source) throws Exception {
+        return this.cacheReadStats.record(this.GetQuery(collectionReference, queryConstraints).get(source), source);
+    }
+
+    /**
+     * Runs the aggregations over the documents matching the query. Aggregations are computed
+     * by the server unless the source is Source.CACHE, in which case they are computed from
+     * the cached documents. The result maps each alias to its value.
+     */
+    public Task<Map<String, Object>> getAggregate(
+        String collectionReference,
+        JSArray queryConstraints,
+        List<JSAggregateField> fields,
+        Source source
+    ) throws Exception {
+        if (fields.isEmpty()) {
+            throw new Exception("At least one aggregate field is required");
+        }
+
+        Query query = this.GetQuery(collectionReference, queryConstraints);
+
+        if (source == Source.CACHE) {
+            for (JSAggregateField field : fields) {
+                this.ConvertAggregateField(field);
             }
+
+            return query
+                .get(Source.CACHE)
+                .onSuccessTask(
+                    this.callbackExecutor,
+                    snapshot -> {
+                        Map<String, Object> result = new HashMap<>();
+                        for (JSAggregateField field : fields) {
+                            result.put(field.getAlias(), ComputeAggregate(snapshot, field));
+                        }
+                        return Tasks.forResult(result);
+                    }
+                );
+        }
+
+        List<AggregateField> aggregateFields = new ArrayList<>(fields.size());
+        for (JSAggregateField field : fields) {
+            aggregateFields.add(this.ConvertAggregateField(field));
+        }
+
+        AggregateQuery aggregateQuery = query.aggregate(
+            aggregateFields.get(0),
+            aggregateFields.subList(1, aggregateFields.size()).toArray(new AggregateField[0])
+        );
+
+        return aggregateQuery
+            .get(AggregateSource.SERVER)
+            .onSuccessTask(
+                this.callbackExecutor,
+                snapshot -> {
+                    Map<String, Object> result = new HashMap<>();
+                    for (int x = 0; x < fields.size(); x++) {
+                        result.put(fields.get(x).getAlias(), snapshot.get(aggregateFields.get(x)));
+                    }
+                    return Tasks.forResult(result);
+                }
+            );
+    }
+
+    /**
+     * Returns the cursor to read the first page of the query from, or looks up a cursor
+     * returned by StorePageCursor. A cursor holds the built query, so later pages are read
+     * without rebuilding it.
+     */
+    public CollectionPageCursor GetPageCursor(String collectionReference, JSArray queryConstraints, String cursor) throws Exception {
+        if (cursor == null) {
+            return new CollectionPageCursor(this.GetQuery(collectionReference, queryConstraints), null);
+        }
+
+        CollectionPageCursor pageCursor = this.pageCursors.get(cursor);
+        if (pageCursor == null) {
+            throw new Exception("Could not find page cursor: " + cursor);
+        }
+
+        return pageCursor;
+    }
+
+    public Task<QuerySnapshot> getCollectionPage(CollectionPageCursor cursor, long pageSize, Source source) {
+        Query query = cursor.getQuery();
+        if (cursor.getLastDocument() != null) {
+            query = query.startAfter(cursor.getLastDocument());
         }
 
-        return collection.get();
+        return this.cacheReadStats.record(query.limit(pageSize).get(source), source);
+    }
+
+    /**
+     * Stores a cursor pointing after the last document of the page and returns its id.
+     * Returns null when the page is the last page of the query.
+     */
+    public String StorePageCursor(CollectionPageCursor cursor, QuerySnapshot page, long pageSize) {
+        List<DocumentSnapshot> documents = page.getDocuments();
+        if (documents.size() < pageSize) {
+            return null;
+        }
+
+        String id = UUID.randomUUID().toString();
+        this.pageCursors.put(id, new CollectionPageCursor(cursor.getQuery(), documents.get(documents.size() - 1)));
+        return id;
+    }
+
+    public ListenerRegistration addCollectionSnapshotListener(
+        String collectionReference,
+        JSArray queryConstraints,
+        @NonNull EventListener<QuerySnapshot> listener
+    ) throws Exception {
+        return this.addCollectionSnapshotListener(collectionReference, queryConstraints, MetadataChanges.EXCLUDE, listener);
     }
 
     public ListenerRegistration addCollectionSnapshotListener(
         String collectionReference,
-        List<JSQueryConstraints> queryConstraints,
+        JSArray queryConstraints,
+        MetadataChanges metadataChanges,
         @NonNull EventListener<QuerySnapshot> listener
     ) throws Exception {
+        return this.GetQuery(collectionReference, queryConstraints).addSnapshotListener(this.callbackExecutor, metadataChanges, listener);
+    }
+
+    /**
+     * Returns the compiled query for the collection and constraints, building it only
+     * when no query with the same canonical key is cached.
+     */
+    public Query GetQuery(String collectionReference, JSArray queryConstraints) throws Exception {
+        String key = QueryKey.canonical(collectionReference, queryConstraints);
+        Query query = this.queryCache.get(key);
+
+        if (query == null) {
+            query = this.BuildQuery(collectionReference, this.ConvertJSArrayToQueryConstraints(queryConstraints));
+            this.queryCache.put(key, query);
+        }
+
+        return query;
+    }
+
+    private Query BuildQuery(String collectionReference, List<JSQueryConstraints> queryConstraints) throws Exception {
         Query collection = this.db.collection(collectionReference);
 
+        if (queryConstraints == null) {
+            return collection;
+        }
+
         for (JSQueryConstraints queryConstraint : queryConstraints) {
-            String operation = queryConstraint.getOperation();
+            String type = queryConstraint.getType();
 
-            switch (operation) {
-                case "==":
-                    collection = collection.whereEqualTo(queryConstraint.getFieldPath(), queryConstraint.getValue());
+            switch (type) {
+                case "where":
+                case "or":
+                case "and":
+                    collection = collection.where(BuildFilter(queryConstraint));
+                    break;
+                case "orderBy":
+                    Query.Direction direction = "desc".equals(queryConstraint.getDirection())
+                        ? Query.Direction.DESCENDING
+                        : Query.Direction.ASCENDING;
+                    collection = collection.orderBy(queryConstraint.getFieldPath(), direction);
                     break;
-                case ">=":
-                    collection = collection.whereGreaterThanOrEqualTo(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "limit":
+                    collection = collection.limit(queryConstraint.getLimit());
                     break;
-                case "<=":
-                    collection = collection.whereLessThanOrEqualTo(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "limitToLast":
+                    collection = collection.limitToLast(queryConstraint.getLimit());
                     break;
-                case ">":
-                    collection = collection.whereGreaterThan(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "startAt":
+                    collection = collection.startAt(queryConstraint.getValues().toArray());
                     break;
-                case "<":
-                    collection = collection.whereLessThan(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "startAfter":
+                    collection = collection.startAfter(queryConstraint.getValues().toArray());
                     break;
-                case "array-contains":
-                    collection = collection.whereArrayContains(queryConstraint.getFieldPath(), queryConstraint.getValue());
+                case "endAt":
+                    collection = collection.endAt(queryConstraint.getValues().toArray());
+                    break;
+                case "endBefore":
+                    collection = collection.endBefore(queryConstraint.getValues().toArray());
                     break;
                 default:
-                    throw new Exception("query operation not support: " + operation);
+                    throw new Exception("query constraint type not support: " + type);
+            }
+        }
+
+        return collection;
+    }
+
+    private Filter BuildFilter(JSQueryConstraints queryConstraint) throws Exception {
+        String type = queryConstraint.getType();
+
+        if (type.equals("or") || type.equals("and")) {
+            List<JSQueryConstraints> children = queryConstraint.getQueryConstraints();
+            Filter[] filters = new Filter[children.size()];
+            for (int x = 0; x < children.size(); x++) {
+                filters[x] = BuildFilter(children.get(x));
             }
+
+            return type.equals("or") ? Filter.or(filters) : Filter.and(filters);
+        }
+
+        if (!type.equals("where")) {
+            throw new Exception("query constraint type not support in filter: " + type);
+        }
+
+        String fieldPath = queryConstraint.getFieldPath();
+        String operation = queryConstraint.getOperation();
+        Object value = queryConstraint.getValue();
+
+        switch (operation) {
+            case "==":
+                return Filter.equalTo(fieldPath, value);
+            case "!=":
+                return Filter.notEqualTo(fieldPath, value);
+            case ">=":
+                return Filter.greaterThanOrEqualTo(fieldPath, value);
+            case "<=":
+                return Filter.lessThanOrEqualTo(fieldPath, value);
+            case ">":
+                return Filter.greaterThan(fieldPath, value);
+            case "<":
+                return Filter.lessThan(fieldPath, value);
+            case "array-contains":
+                return Filter.arrayContains(fieldPath, value);
+            case "array-contains-any":
+                return Filter.arrayContainsAny(fieldPath, ConvertValueToList(operation, value));
+            case "in":
+                return Filter.inArray(fieldPath, ConvertValueToList(operation, value));
+            case "not-in":
+                return Filter.notInArray(fieldPath, ConvertValueToList(operation, value));
+            default:
+                throw new Exception("query operation not support: " + operation);
+        }
+    }
+
+    private List<Object> ConvertValueToList(String operation, Object value) throws Exception {
+        if (!(value instanceof List)) {
+            throw new Exception("query operation requires an array value: " + operation);
         }
 
-        return collection.addSnapshotListener(listener);
+        return (List<Object>) value;
+    }
+
+    private AggregateField ConvertAggregateField(JSAggregateField field) throws Exception {
+        switch (field.getType()) {
+            case "count":
+                return AggregateField.count();
+            case "sum":
+                return AggregateField.sum(this.RequireAggregateFieldPath(field));
+            case "average":
+                return AggregateField.average(this.RequireAggregateFieldPath(field));
+            default:
+                throw new Exception("Aggregate type not support: " + field.getType());
+        }
+    }
+
+    private String RequireAggregateFieldPath(JSAggregateField field) throws Exception {
+        if (field.getFieldPath() == null) {
+            throw new Exception("fieldPath is required for aggregate type: " + field.getType());
+        }
+        return field.getFieldPath();
+    }
+
+    /**
+     * Computes an aggregation over the documents of a snapshot the way the server does:
+     * values that are not numbers are ignored, a sum stays a long while every value is
+     * a long and an average over no values is null.
+     */
+    private Object ComputeAggregate(QuerySnapshot snapshot, JSAggregateField field) {
+        if ("count".equals(field.getType())) {
+            return (long) snapshot.size();
+        }
+
+        long longSum = 0;
+        double doubleSum = 0;
+        boolean isDouble = false;
+        int count = 0;
+
+        for (DocumentSnapshot documentSnapshot : snapshot.getDocuments()) {
+            Object value = documentSnapshot.get(field.getFieldPath());
+            if (value instanceof Long) {
+                longSum += (Long) value;
+            } else if (value instanceof Number) {
+                doubleSum += ((Number) value).doubleValue();
+                isDouble = true;
+            } else {
+                continue;
+            }
+            count++;
+        }
+
+        if ("sum".equals(field.getType())) {
+            return isDouble ? longSum + doubleSum : longSum;
+        }
+
+        return count == 0 ? null : (longSum + doubleSum) / count;
+    }
+
+    /**
+     * @param expected the condition value, written by the codec like the operation data
+     */
+    private boolean MatchesCondition(DocumentSnapshot snapshot, JSTransactionOperation operation, Object expected) {
+        if (operation.getConditionExists() != null && operation.getConditionExists() != snapshot.exists()) {
+            return false;
+        }
+
+        if (operation.getConditionFieldPath() == null) {
+            return true;
+        }
+
+        return ValuesEqual(snapshot.get(operation.getConditionFieldPath()), expected);
+    }
+
+    /**
+     * Compares a value read from Firestore with one written by the codec. Numbers from JS and
+     * from Firestore do not share a type, so they are compared by value, also inside maps and lists.
+     */
+    private static boolean ValuesEqual(Object value, Object expected) {
+        if (value instanceof Number && expected instanceof Number) {
+            return ((Number) value).doubleValue() == ((Number) expected).doubleValue();
+        } else if (value instanceof Map && expected instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<?, ?> expectedMap = (Map<?, ?>) expected;
+            if (map.size() != expectedMap.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!expectedMap.containsKey(entry.getKey()) || !ValuesEqual(entry.getValue(), expectedMap.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (value instanceof List && expected instanceof List) {
+            List<?> list = (List<?>) value;
+            List<?> expectedList = (List<?>) expected;
+            if (list.size() != expectedList.size()) {
+                return false;
+            }
+            for (int x = 0; x < list.size(); x++) {
+                if (!ValuesEqual(list.get(x), expectedList.get(x))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        return Objects.equals(value, expected);
     }
 
     public JSObject ConvertSnapshotToJSObject(DocumentSnapshot documentSnapshot) {
+        return ConvertSnapshotToJSObject(documentSnapshot, null);
+    }
+
+    /**
+     * Converts the snapshot, reading only the given field paths when fields is not null.
+     * Nested field paths are returned nested, as they are stored in the document.
+     */
+    public JSObject ConvertSnapshotToJSObject(DocumentSnapshot documentSnapshot, List<String> fields) {
         JSObject result = new JSObject();
         result.put("id", documentSnapshot.getId());
         result.put("path", documentSnapshot.getReference().getPath());
         if (documentSnapshot.exists()) {
-            Map<String, Object> firestoreData = documentSnapshot.getData();
-            JSObject data = new JSObject();
+            if (fields != null) {
+                result.put("data", ConvertFieldsToJSObject(documentSnapshot, fields));
+                return result;
+            }
 
-            for (Map.Entry<String, Object> entry : firestoreData.entrySet()) {
-                Object value = entry.getValue();
-                value = ConvertObjectRead(value);
+            result.put("data", this.codec.readMap(documentSnapshot.getData()));
+        }
 
-                data.put(entry.getKey(), value);
+        return result;
+    }
+
+    private JSObject ConvertFieldsToJSObject(DocumentSnapshot documentSnapshot, List<String> fields) {
+        JSObject data = new JSObject();
+
+        for (String field : fields) {
+            String[] segments = field.split("\\.");
+            FieldPath fieldPath = FieldPath.of(segments);
+            if (!documentSnapshot.contains(fieldPath)) {
+                continue;
             }
 
-            result.put("data", data);
+            JSObject parent = data;
+            for (int x = 0; x < segments.length - 1; x++) {
+                Object child = parent.opt(segments[x]);
+                if (!(child instanceof JSObject)) {
+                    child = new JSObject();
+                    parent.put(segments[x], child);
+                }
+                parent = (JSObject) child;
+            }
+
+            parent.put(segments[segments.length - 1], this.codec.read(documentSnapshot.get(fieldPath)));
+        }
+
+        return data;
+    }
+
+    public JSObject ConvertQuerySnapshotToJSObject(QuerySnapshot querySnapshot) {
+        return ConvertQuerySnapshotToJSObject(querySnapshot, null);
+    }
+
+    public JSObject ConvertQuerySnapshotToJSObject(QuerySnapshot querySnapshot, List<String> fields) {
+        JSObject result = new JSObject();
+        JSArray items = new JSArray();
+
+        List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+        for (DocumentSnapshot documentSnapshot : documents) {
+            JSObject item = ConvertSnapshotToJSObject(documentSnapshot, fields);
+            items.put(item);
+        }
+
+        result.put("collection", items);
+        return result;
+    }
+
+    public JSObject ConvertDocumentChangesToJSObject(QuerySnapshot querySnapshot) {
+        return ConvertDocumentChangesToJSObject(querySnapshot, null);
+    }
+
+    public JSObject ConvertDocumentChangesToJSObject(QuerySnapshot querySnapshot, List<String> fields) {
+        JSObject result = new JSObject();
+        JSArray changes = new JSArray();
+
+        for (DocumentChange documentChange : querySnapshot.getDocumentChanges()) {
+            changes.put(
+                ConvertDocumentChange(
+                    ConvertDocumentChangeType(documentChange.getType()),
+                    documentChange.getOldIndex(),
+                    documentChange.getNewIndex(),
+                    documentChange.getDocument(),
+                    fields
+                )
+            );
         }
 
+        result.put("changes", changes);
         return result;
     }
 
+    public Source ConvertSource(String source) throws Exception {
+        if (source == null) {
+            return Source.DEFAULT;
+        }
+
+        switch (source) {
+            case "default":
+                return Source.DEFAULT;
+            case "cache":
+                return Source.CACHE;
+            case "server":
+                return Source.SERVER;
+            default:
+                throw new Exception("source not support: " + source);
+        }
+    }
+
+    /**
+     * Returns true if both snapshots are for the same document and hold the same data.
+     */
+    public boolean HasSameData(DocumentSnapshot first, DocumentSnapshot second) {
+        return HasSameData(first, second, null);
+    }
+
+    /**
+     * Returns true if both snapshots are for the same document and hold the same data in the
+     * given field paths, or in every field when fields is null.
+     */
+    public boolean HasSameData(DocumentSnapshot first, DocumentSnapshot second, List<String> fields) {
+        if (!first.getReference().getPath().equals(second.getReference().getPath()) || first.exists() != second.exists()) {
+            return false;
+        }
+
+        if (fields == null) {
+            return Objects.equals(first.getData(), second.getData());
+        }
+
+        for (String field : fields) {
+            FieldPath fieldPath = FieldPath.of(field.split("\\."));
+            if (first.contains(fieldPath) != second.contains(fieldPath) || !Objects.equals(first.get(fieldPath), second.get(fieldPath))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if both snapshots hold the same documents, in the same order, with the same data.
+     */
+    public boolean HasSameData(QuerySnapshot first, QuerySnapshot second) {
+        return HasSameData(first, second, null);
+    }
+
+    /**
+     * Returns true if both snapshots hold the same documents, in the same order, with the same data
+     * in the given field paths, or in every field when fields is null.
+     */
+    public boolean HasSameData(QuerySnapshot first, QuerySnapshot second, List<String> fields) {
+        List<DocumentSnapshot> firstDocuments = first.getDocuments();
+        List<DocumentSnapshot> secondDocuments = second.getDocuments();
+
+        if (firstDocuments.size() != secondDocuments.size()) {
+            return false;
+        }
+
+        for (int x = 0; x < firstDocuments.size(); x++) {
+            if (!HasSameData(firstDocuments.get(x), secondDocuments.get(x), fields)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public List<JSQueryConstraints> ConvertJSArrayToQueryConstraints(JSArray array) throws Exception {
         if (array == null) {
             return null;
         }
 
+        return ConvertJSONArrayToQueryConstraints(array);
+    }
+
+    private List<JSQueryConstraints> ConvertJSONArrayToQueryConstraints(JSONArray array) throws Exception {
         ArrayList<JSQueryConstraints> list = new ArrayList<>();
         for (int x = 0; x < array.length(); x++) {
             JSONObject item = array.getJSONObject(x);
-            String fieldPath = item.getString("fieldPath");
-            String operation = item.getString("opStr");
-            Object value = item.get("value");
-
-            if (value instanceof JSONObject) {
-                JSONObject jsonObject = ((JSONObject) value);
-                if (jsonObject.has("seconds") && jsonObject.has("nanoseconds")) {
-                    value = new Timestamp(jsonObject.getLong("seconds"), jsonObject.getInt("nanoseconds"));
-                } else {
-                    throw new Exception("unhandled JSONObject type: " + jsonObject);
-                }
+            String type = item.optString("type", "where");
+
+            switch (type) {
+                case "where":
+                    String fieldPath = item.getString("fieldPath");
+                    String operation = item.getString("opStr");
+                    Object value = ConvertQueryValue(item.get("value"));
+                    list.add(new JSQueryConstraints(fieldPath, operation, value));
+                    break;
+                case "orderBy":
+                    list.add(
+                        new JSQueryConstraints(
+                            type,
+                            item.getString("fieldPath"),
+                            null,
+                            null,
+                            item.optString("direction", "asc"),
+                            0,
+                            null,
+                            null
+                        )
+                    );
+                    break;
+                case "limit":
+                case "limitToLast":
+                    list.add(new JSQueryConstraints(type, null, null, null, null, item.getLong("limit"), null, null));
+                    break;
+                case "startAt":
+                case "startAfter":
+                case "endAt":
+                case "endBefore":
+                    List<Object> values = (List<Object>) ConvertQueryValue(item.getJSONArray("values"));
+                    list.add(new JSQueryConstraints(type, null, null, null, null, 0, values, null));
+                    break;
+                case "or":
+                case "and":
+                    List<JSQueryConstraints> children = ConvertJSONArrayToQueryConstraints(item.getJSONArray("queryConstraints"));
+                    list.add(new JSQueryConstraints(type, null, null, null, null, 0, null, children));
+                    break;
+                default:
+                    throw new Exception("query constraint type not support: " + type);
             }
-            list.add(new JSQueryConstraints(fieldPath, operation, value));
         }
 
         return list;
     }
 
-    private Map<String, Object> PrepDataForSend(Map<String, Object> data) throws Exception {
-        Map<String, Object> prepared = new HashMap<>();
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
-            Object value = entry.getValue();
-            prepared.put(entry.getKey(), ConvertObjectWrite(value));
+    private Object ConvertQueryValue(Object value) throws Exception {
+        if (value == JSONObject.NULL) {
+            return null;
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            ArrayList<Object> list = new ArrayList<>(array.length());
+            for (int x = 0; x < array.length(); x++) {
+                list.add(ConvertQueryValue(array.get(x)));
+            }
+            return list;
+        } else if (value instanceof JSONObject) {
+            JSONObject jsonObject = ((JSONObject) value);
+            if (jsonObject.has("specialType")) {
+                return this.codec.write(jsonObject);
+            } else if (jsonObject.has("seconds") && jsonObject.has("nanoseconds")) {
+                return new Timestamp(jsonObject.getLong("seconds"), jsonObject.getInt("nanoseconds"));
+            } else {
+                throw new Exception("unhandled JSONObject type: " + jsonObject);
+            }
         }
 
-        return prepared;
+        return value;
     }
 
-    private Object ConvertObjectWrite(Object value) throws Exception {
-        if (value != null && value.toString().equals("null")) {
-            value = null;
-        } else if (value instanceof JSONObject) {
-            JSONObject jsObject = ((JSONObject) value);
+    private Map<String, Object> PrepDataForSend(JSONObject data) throws Exception {
+        if (data == null) {
+            throw new Exception("data must not be null");
+        }
 
-            if (jsObject.has("specialType")) {
-                String specialType = jsObject.getString("specialType");
-                switch (specialType) {
-                    case "Timestamp":
-                        value = new Timestamp(jsObject.getLong("seconds"), jsObject.getInt("nanoseconds"));
-                        break;
-                    default:
-                        throw new Exception("Unhandled specialType:" + specialType);
-                }
-            }
-        } else if (value instanceof HashMap) {
-            HashMap<String, Object> jsObject = ((HashMap<String, Object>) value);
-
-            if (jsObject.keySet().contains("specialType")) {
-                String specialType = (String) jsObject.get("specialType");
-                switch (specialType) {
-                    case "Timestamp":
-                        value = new Timestamp(Long.parseLong(jsObject.get("seconds").toString()), (int) jsObject.get("nanoseconds"));
-                        break;
-                    default:
-                        throw new Exception("Unhandled specialType:" + specialType);
-                }
+        return this.codec.writeData(data);
+    }
+
+    /**
+     * Converts the difference between two snapshots of the same query into the same shape as
+     * ConvertDocumentChangesToJSObject, for snapshots that were not delivered one after the
+     * other. Like Firestore's own changes, the indexes apply to the list as the changes before
+     * them have left it: removals come first, then additions and modifications in query order.
+     */
+    public JSObject ConvertSnapshotDiffToJSObject(QuerySnapshot previous, QuerySnapshot current, List<String> fields) {
+        JSObject result = new JSObject();
+        JSArray changes = new JSArray();
+
+        List<DocumentSnapshot> previousDocuments = previous.getDocuments();
+        List<DocumentSnapshot> currentDocuments = current.getDocuments();
+        Map<String, Integer> currentIndexes = new HashMap<>(FirestoreValueCodec.Capacity(currentDocuments.size()));
+        for (int x = 0; x < currentDocuments.size(); x++) {
+            currentIndexes.put(currentDocuments.get(x).getReference().getPath(), x);
+        }
+
+        // The documents kept from the previous snapshot, in their previous order, by path.
+        Map<String, Integer> keptIndexes = new HashMap<>(FirestoreValueCodec.Capacity(previousDocuments.size()));
+        List<DocumentSnapshot> keptDocuments = new ArrayList<>(previousDocuments.size());
+        int removed = 0;
+        for (int x = 0; x < previousDocuments.size(); x++) {
+            DocumentSnapshot documentSnapshot = previousDocuments.get(x);
+            String path = documentSnapshot.getReference().getPath();
+            if (currentIndexes.containsKey(path)) {
+                keptIndexes.put(path, keptDocuments.size());
+                keptDocuments.add(documentSnapshot);
             } else {
-                HashMap<String, Object> map = new HashMap<String, Object>();
-                for (Map.Entry<String, Object> i : jsObject.entrySet()) {
-                    map.put(i.getKey(), ConvertObjectWrite(i.getValue()));
-                }
-                value = map;
+                changes.put(ConvertDocumentChange("removed", x - removed, -1, documentSnapshot, fields));
+                removed++;
             }
-        } else if (value instanceof ArrayList) {
-            ArrayList list = (ArrayList) value;
-
-            ArrayList array = new ArrayList();
-            for (Object item : list) {
-                if (item instanceof HashMap) {
-                    array.add(ConvertObjectWrite(item));
-                } else {
-                    array.add(item);
-                }
+        }
+
+        // After the changes for the first x documents, the client holds those documents in
+        // query order, followed by the kept documents not moved yet, in their previous order.
+        PendingPositions pending = new PendingPositions(keptDocuments.size());
+        for (int x = 0; x < currentDocuments.size(); x++) {
+            DocumentSnapshot documentSnapshot = currentDocuments.get(x);
+            Integer keptIndex = keptIndexes.get(documentSnapshot.getReference().getPath());
+
+            if (keptIndex == null) {
+                changes.put(ConvertDocumentChange("added", -1, x, documentSnapshot, fields));
+                continue;
+            }
+
+            int oldIndex = x + pending.countBefore(keptIndex);
+            pending.remove(keptIndex);
+            if (oldIndex == x && this.HasSameData(keptDocuments.get(keptIndex), documentSnapshot)) {
+                continue;
             }
-            value = array;
+
+            changes.put(ConvertDocumentChange("modified", oldIndex, x, documentSnapshot, fields));
         }
 
-        return value;
+        result.put("changes", changes);
+        return result;
     }
 
-    private Object ConvertObjectRead(Object value) {
-        if (value instanceof ArrayList) {
-            ArrayList list = (ArrayList) value;
+    /**
+     * Counts the positions still pending before a position, and removes positions, in
+     * logarithmic time using a Fenwick tree. Every position starts out pending.
+     */
+    private static class PendingPositions {
+
+        private final int[] tree;
 
-            JSArray array = new JSArray();
-            for (Object item : list) {
-                if (item instanceof HashMap) {
-                    array.put(ConvertObjectRead(item));
-                } else {
-                    array.put(item);
+        private PendingPositions(int size) {
+            this.tree = new int[size + 1];
+            for (int x = 1; x <= size; x++) {
+                this.tree[x]++;
+                int parent = x + (x & -x);
+                if (parent <= size) {
+                    this.tree[parent] += this.tree[x];
                 }
             }
-            value = array;
-        } else if (value instanceof HashMap) {
-            HashMap<String, Object> list = (HashMap<String, Object>) value;
+        }
 
-            JSObject map = new JSObject();
-            for (Map.Entry<String, Object> i : list.entrySet()) {
-                map.put(i.getKey(), ConvertObjectRead(i.getValue()));
+        private int countBefore(int position) {
+            int count = 0;
+            for (int x = position; x > 0; x -= x & -x) {
+                count += this.tree[x];
             }
+            return count;
+        }
 
-            value = map;
-        } else if (value instanceof Timestamp) {
-            JSONObject jsonObject = new JSObject();
-            try {
-                jsonObject.put("seconds", ((Timestamp) value).getSeconds());
-                jsonObject.put("nanoseconds", ((Timestamp) value).getNanoseconds());
-                jsonObject.put("specialType", "Timestamp");
-            } catch (JSONException e) {
-                e.printStackTrace();
+        private void remove(int position) {
+            for (int x = position + 1; x < this.tree.length; x += x & -x) {
+                this.tree[x]--;
             }
-            value = jsonObject;
         }
+    }
 
-        return value;
+    private JSObject ConvertDocumentChange(
+        String type,
+        int oldIndex,
+        int newIndex,
+        DocumentSnapshot documentSnapshot,
+        List<String> fields
+    ) {
+        JSObject change = new JSObject();
+        change.put("type", type);
+        change.put("oldIndex", oldIndex);
+        change.put("newIndex", newIndex);
+        change.put("document", ConvertSnapshotToJSObject(documentSnapshot, fields));
+        return change;
+    }
+
+    public JSObject ConvertSnapshotMetadata(SnapshotMetadata metadata) {
+        JSObject result = new JSObject();
+        result.put("hasPendingWrites", metadata.hasPendingWrites());
+        result.put("fromCache", metadata.isFromCache());
+        return result;
+    }
+
+    private String ConvertDocumentChangeType(DocumentChange.Type type) {
+        switch (type) {
+            case ADDED:
+                return "added";
+            case MODIFIED:
+                return "modified";
+            case REMOVED:
+                return "removed";
+            default:
+                return type.name().toLowerCase();
+        }
     }
 
     private void InitializeFirestore() throws Exception {
@@ -336,20 +1152,97 @@ public class CapacitorFirestore {
         }
 
         this.db = FirebaseFirestore.getInstance(app);
+        if (this.emulatorHost != null) {
+            this.db.useEmulator(this.emulatorHost, this.emulatorPort);
+        }
+        this.codec = new FirestoreValueCodec(this.db);
+        this.cacheReadStats = new CacheReadStats();
+        this.pageCursors.evictAll();
+        this.queryCache.evictAll();
 
         FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
-            .setPersistenceEnabled(true)
-            .setCacheSizeBytes(FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED)
+            .setLocalCacheSettings(this.BuildLocalCacheSettings())
             .build();
 
         this.db.setFirestoreSettings(settings);
     }
 
+    private LocalCacheSettings BuildLocalCacheSettings() throws Exception {
+        switch (this.cacheMode) {
+            case "memory":
+                if (this.cacheSizeBytes == FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED) {
+                    return MemoryCacheSettings.newBuilder().setGcSettings(MemoryEagerGcSettings.newBuilder().build()).build();
+                }
+
+                return MemoryCacheSettings
+                    .newBuilder()
+                    .setGcSettings(MemoryLruGcSettings.newBuilder().setSizeBytes(this.cacheSizeBytes).build())
+                    .build();
+            case "persistent":
+                return PersistentCacheSettings.newBuilder().setSizeBytes(this.cacheSizeBytes).build();
+            default:
+                throw new Exception("cacheMode not support: " + this.cacheMode);
+        }
+    }
+
+    public String getCacheMode() {
+        return this.cacheMode;
+    }
+
+    public long getCacheSizeBytes() {
+        return this.cacheSizeBytes;
+    }
+
+    /**
+     * Returns the size in bytes of the Firestore database files on disk, including the
+     * write-ahead log, or -1 when the cache is memory only.
+     */
+    public long getCacheDiskBytes() throws Exception {
+        if (!this.cacheMode.equals("persistent")) {
+            return -1;
+        }
+        if (this.context == null || this.app == null) {
+            return 0;
+        }
+
+        File databases = this.context.getDatabasePath("firestore").getParentFile();
+        File[] files = databases != null ? databases.listFiles() : null;
+        if (files == null) {
+            return 0;
+        }
+
+        // Named the same way as Firestore's SQLitePersistence names its database.
+        String name =
+            "firestore." +
+            URLEncoder.encode(this.app.getPersistenceKey(), "utf-8") +
+            "." +
+            URLEncoder.encode(this.app.getOptions().getProjectId(), "utf-8") +
+            "." +
+            URLEncoder.encode(DEFAULT_DATABASE_ID, "utf-8");
+        long size = 0;
+        for (File file : files) {
+            // The database itself and its -wal, -shm and -journal files.
+            if (file.getName().equals(name) || file.getName().startsWith(name + "-")) {
+                size += file.length();
+            }
+        }
+
+        return size;
+    }
+
+    public CacheReadStats getCacheReadStats() {
+        return this.cacheReadStats;
+    }
+
+    public Task<Void> waitForPendingWrites() {
+        return this.db.waitForPendingWrites();
+    }
+
     public Task<Void> enableNetwork() {
         return this.db.enableNetwork();
     }
 
     public Task<Void> disableNetwork() {
-        return this.db.enableNetwork();
+        return this.db.disableNetwork();
     }
 }
@@ -2,6 +2,10 @@ package com.proteansoftware.capacitor.firestore;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
 import android.util.Log;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
@@ -10,16 +14,26 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SnapshotMetadata;
+import com.google.firebase.firestore.Source;
 import com.google.firebase.firestore.util.Util;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -27,10 +41,20 @@ import org.json.JSONObject;
 @CapacitorPlugin(name = "CapacitorFirestore")
 public class CapacitorFirestorePlugin extends Plugin {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_DOCUMENT_CACHE_TTL = 60000;
+    private static final int DEFAULT_TRANSACTION_ATTEMPTS = 5;
+    private static final int DEFAULT_METRICS_INTERVAL = 0;
+    private static final int DEFAULT_EMULATOR_PORT = 8080;
+
     private CapacitorFirestore implementation = new CapacitorFirestore();
-    private Map<String, ListenerRegistration> listeners = new HashMap<>();
-    private ArrayList<String> resolvedListeners = new ArrayList<>();
-    private int pendingActions = 0;
+    private final SnapshotListenerRegistry listeners = new SnapshotListenerRegistry();
+    private volatile PendingWriteTracker pendingWrites = new PendingWriteTracker();
+    private volatile DocumentCache documentCache = new DocumentCache(0, 0);
+    private volatile PluginMetrics metrics = new PluginMetrics(false);
+    private final ScheduledExecutorService metricsScheduler = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> metricsEvents = null;
+    private ConnectivityManager.NetworkCallback networkCallback = null;
 
     @Override
     public void load() {
@@ -38,28 +62,238 @@ public class CapacitorFirestorePlugin extends Plugin {
         String projectId = getConfig().getString("projectId");
         String applicationId = getConfig().getString("applicationId");
         String apiKey = getConfig().getString("apiKey");
+        implementation.setUseBackgroundExecutor(getConfig().getBoolean("useBackgroundExecutor", false));
+        implementation.setCacheSettings(
+            getConfig().getString("cacheMode", "persistent"),
+            getConfig().getConfigJSON().optLong("cacheSizeBytes", FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED)
+        );
+        implementation.setEmulator(getConfig().getString("emulatorHost"), getConfig().getInt("emulatorPort", DEFAULT_EMULATOR_PORT));
+        documentCache =
+            new DocumentCache(
+                getConfig().getInt("documentCacheSizeBytes", 0),
+                getConfig().getInt("documentCacheTtlMs", DEFAULT_DOCUMENT_CACHE_TTL)
+            );
+        configureMetrics(
+            getConfig().getBoolean("metricsEnabled", false),
+            getConfig().getInt("metricsIntervalMs", DEFAULT_METRICS_INTERVAL)
+        );
+        pendingWrites = createPendingWriteTracker();
 
         try {
             implementation.Initialize(context, projectId, applicationId, apiKey);
+            reconcileRestoredWrites(pendingWrites);
         } catch (Exception e) {
             Log.e("CapacitorFirestore", e.getMessage());
         }
+
+        watchNetwork(context);
+    }
+
+    /**
+     * Writes left in the journal are only still queued if Firestore persisted its write queue.
+     */
+    private PendingWriteTracker createPendingWriteTracker() {
+        return new PendingWriteTracker(new PendingWriteJournal(this.getContext()), implementation.getCacheMode().equals("persistent"));
+    }
+
+    /**
+     * Removes the writes restored from the journal once Firestore has replayed its write queue.
+     */
+    private void reconcileRestoredWrites(PendingWriteTracker tracker) {
+        tracker
+            .getRestored()
+            .addOnSuccessListener(
+                implementation.getCallbackExecutor(),
+                restored -> {
+                    if (tracker.getCount() == 0) {
+                        return;
+                    }
+
+                    long lastId = tracker.getLastId();
+                    implementation
+                        .waitForPendingWrites()
+                        .addOnSuccessListener(implementation.getCallbackExecutor(), value -> tracker.reconcile(lastId));
+                }
+            );
+    }
+
+    /**
+     * Measures the replay of the pending writes whenever the device gets a network connection.
+     */
+    private void watchNetwork(Context context) {
+        ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) {
+            return;
+        }
+
+        AtomicInteger available = new AtomicInteger();
+        NetworkRequest request = new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build();
+        networkCallback =
+            new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    available.incrementAndGet();
+                    pendingWrites.startReplay();
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    if (available.decrementAndGet() <= 0) {
+                        available.set(0);
+                        pendingWrites.stopReplay();
+                    }
+                }
+            };
+        connectivity.registerNetworkCallback(request, networkCallback);
+    }
+
+    /**
+     * Releases what load started, so a recreated plugin or bridge does not leak the network
+     * callback, the threads or the native snapshot listeners of this instance.
+     */
+    @Override
+    protected void handleOnDestroy() {
+        if (networkCallback != null) {
+            ConnectivityManager connectivity = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivity != null) {
+                connectivity.unregisterNetworkCallback(networkCallback);
+            }
+            networkCallback = null;
+        }
+
+        metricsScheduler.shutdownNow();
+        listeners.close();
     }
 
     @PluginMethod
     public void getPendingActions(PluginCall call) {
         JSObject object = new JSObject();
-        object.put("count", pendingActions);
+        JSArray writes = new JSArray();
+        long oldestStartedAt = 0;
+
+        for (PendingWriteTracker.PendingWrite write : pendingWrites.getPendingWrites()) {
+            JSObject item = new JSObject();
+            item.put("path", write.getPath());
+            item.put("type", write.getType());
+            item.put("bytes", write.getBytes());
+            item.put("startedAt", write.getStartedAt());
+            item.put("restored", write.isRestored());
+            writes.put(item);
+
+            if (oldestStartedAt == 0 || write.getStartedAt() < oldestStartedAt) {
+                oldestStartedAt = write.getStartedAt();
+            }
+        }
+
+        object.put("count", writes.length());
+        object.put("bytes", pendingWrites.getBytes());
+        object.put("oldestAgeMs", oldestStartedAt > 0 ? System.currentTimeMillis() - oldestStartedAt : 0);
+        object.put("writes", writes);
+
+        JSObject replay = pendingWrites.getReplayStats();
+        if (replay != null) {
+            object.put("replay", replay);
+        }
         call.resolve(object);
     }
 
+    @PluginMethod
+    public void waitForPendingWrites(PluginCall call) {
+        long lastId = pendingWrites.getLastId();
+        Task<Void> listener = implementation.waitForPendingWrites();
+
+        listener.addOnSuccessListener(
+            implementation.getCallbackExecutor(),
+            value -> {
+                pendingWrites.reconcile(lastId);
+                call.resolve();
+            }
+        );
+
+        listener.addOnFailureListener(
+            implementation.getCallbackExecutor(),
+            error -> {
+                call.reject(error.getMessage(), error);
+            }
+        );
+    }
+
+    @PluginMethod
+    public void getCacheStats(PluginCall call) {
+        JSObject object = new JSObject();
+        object.put("cacheMode", implementation.getCacheMode());
+        object.put("cacheSizeBytes", implementation.getCacheSizeBytes());
+        try {
+            object.put("diskBytes", implementation.getCacheDiskBytes());
+        } catch (Exception e) {
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        object.put("reads", implementation.getCacheReadStats().toJSObject());
+        call.resolve(object);
+    }
+
+    @PluginMethod
+    public void getDocumentCacheStats(PluginCall call) {
+        call.resolve(documentCache.getStats());
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        call.resolve(metrics.toJSObject());
+    }
+
+    @PluginMethod
+    public void resetMetrics(PluginCall call) {
+        metrics.reset();
+        call.resolve();
+    }
+
+    /**
+     * Replaces the metrics and, when an interval is set, sends them to the "metrics"
+     * listeners at that interval.
+     */
+    private synchronized void configureMetrics(boolean enabled, int intervalMs) {
+        metrics = new PluginMetrics(enabled);
+
+        if (metricsEvents != null) {
+            metricsEvents.cancel(false);
+            metricsEvents = null;
+        }
+
+        if (enabled && intervalMs > 0) {
+            metricsEvents =
+                metricsScheduler.scheduleAtFixedRate(
+                    () -> notifyListeners("metrics", metrics.toJSObject()),
+                    intervalMs,
+                    intervalMs,
+                    TimeUnit.MILLISECONDS
+                );
+        }
+    }
+
     @PluginMethod
     public void initializeFirestore(PluginCall call) {
         String projectId = call.getString("projectId");
         String applicationId = call.getString("applicationId");
         String apiKey = call.getString("apiKey");
+        String cacheMode = implementation.getCacheMode();
+        implementation.setUseBackgroundExecutor(call.getBoolean("useBackgroundExecutor", false));
+        implementation.setCacheSettings(
+            call.getString("cacheMode", "persistent"),
+            call.getData().optLong("cacheSizeBytes", FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED)
+        );
+        implementation.setEmulator(call.getString("emulatorHost"), call.getInt("emulatorPort", DEFAULT_EMULATOR_PORT));
+        documentCache =
+            new DocumentCache(call.getInt("documentCacheSizeBytes", 0), call.getInt("documentCacheTtlMs", DEFAULT_DOCUMENT_CACHE_TTL));
+        configureMetrics(call.getBoolean("metricsEnabled", false), call.getInt("metricsIntervalMs", DEFAULT_METRICS_INTERVAL));
         try {
             implementation.Initialize(this.getContext(), projectId, applicationId, apiKey);
+            if (!implementation.getCacheMode().equals(cacheMode)) {
+                // The journal is only kept while Firestore persists its write queue.
+                pendingWrites = createPendingWriteTracker();
+                reconcileRestoredWrites(pendingWrites);
+            }
             call.resolve();
         } catch (Exception e) {
             call.reject(e.getMessage());
@@ -83,20 +317,14 @@ public class CapacitorFirestorePlugin extends Plugin {
 
     @PluginMethod
     public void signOut(PluginCall call) {
+        // The cached documents were read as the user signing out.
+        documentCache.clear();
         implementation.signOut();
     }
 
     @PluginMethod
     public void clearAllSnapshotListeners(PluginCall call) {
-        for (ListenerRegistration listener : listeners.values()) {
-            if (listener != null) {
-                listener.remove();
-            }
-        }
-
-        resolvedListeners.addAll(listeners.keySet());
-        listeners = new HashMap<>();
-
+        listeners.clear();
         call.resolve();
     }
 
@@ -109,76 +337,217 @@ public class CapacitorFirestorePlugin extends Plugin {
             return;
         }
 
-        if (resolvedListeners.contains(callbackId)) {
-            call.resolve();
-            return;
-        }
-
-        ListenerRegistration listener = listeners.get(callbackId);
-
-        if (listener == null) {
+        if (!listeners.remove(callbackId)) {
             call.reject("Could not find listener for callback: " + callbackId);
             return;
         }
 
-        listener.remove();
-        listeners.remove(callbackId);
-        resolvedListeners.add(callbackId);
         call.resolve();
     }
 
     @PluginMethod
     public void getDocument(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
         String documentReference = call.getString("reference");
-        Task<DocumentSnapshot> listener = implementation.getDocument(documentReference);
+        String source = call.getString("source");
+        List<String> fields;
+        Task<DocumentSnapshot> listener;
+
+        try {
+            fields = getFields(call);
+        } catch (JSONException e) {
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        operation.mark(PluginMetrics.PHASE_DECODE);
+
+        // The document cache holds full documents only, and may be behind the server like the
+        // Firestore cache, so it only answers reads from the cache.
+        if (fields == null && "cache".equals(source)) {
+            JSObject cached = documentCache.get(documentReference);
+            if (cached != null) {
+                operation.finish(cached, 1);
+                call.resolve(cached);
+                return;
+            }
+        }
+
+        try {
+            listener = implementation.getDocument(documentReference, implementation.ConvertSource(source));
+        } catch (Exception e) {
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        operation.mark(PluginMetrics.PHASE_PREPARE);
 
         listener.addOnSuccessListener(
+            implementation.getCallbackExecutor(),
             value -> {
-                JSObject result = implementation.ConvertSnapshotToJSObject(value);
+                operation.mark(PluginMetrics.PHASE_TASK);
+                JSObject result = ConvertAndCacheSnapshot(value, fields);
+                operation.mark(PluginMetrics.PHASE_CONVERT);
+                operation.finish(result, 1);
                 call.resolve(result);
             }
         );
 
         listener.addOnFailureListener(
+            implementation.getCallbackExecutor(),
             error -> {
+                operation.fail();
                 call.reject(error.getMessage(), error);
             }
         );
     }
 
     @PluginMethod
-    public void updateDocument(PluginCall call) {
-        String documentReference = call.getString("reference");
-        JSObject data = call.getObject("data");
+    public void getDocuments(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
+        JSArray clientReferences = call.getArray("references");
+        String source = call.getString("source");
+        List<String> documentReferences;
+        List<Task<DocumentSnapshot>> reads;
+
+        if (clientReferences == null) {
+            operation.fail();
+            call.reject("references is null");
+            return;
+        }
 
-        HashMap<String, Object> mapData;
+        try {
+            documentReferences = clientReferences.toList();
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            reads = implementation.getDocuments(documentReferences, implementation.ConvertSource(source));
+        } catch (Exception e) {
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        operation.mark(PluginMetrics.PHASE_PREPARE);
+
+        Tasks
+            .whenAllComplete(reads)
+            .addOnSuccessListener(
+                implementation.getCallbackExecutor(),
+                value -> {
+                    operation.mark(PluginMetrics.PHASE_TASK);
+                    JSObject result = new JSObject();
+                    JSArray documents = new JSArray();
+
+                    for (int x = 0; x < reads.size(); x++) {
+                        Task<DocumentSnapshot> read = reads.get(x);
+                        JSObject document = new JSObject();
+                        document.put("reference", documentReferences.get(x));
+                        if (read.isSuccessful()) {
+                            document.put("snapshot", ConvertAndCacheSnapshot(read.getResult(), null));
+                        } else if (read.getException() != null) {
+                            document.put("error", read.getException().getMessage());
+                        }
+                        documents.put(document);
+                    }
+
+                    result.put("documents", documents);
+                    operation.mark(PluginMetrics.PHASE_CONVERT);
+                    operation.finish(result, reads.size());
+                    call.resolve(result);
+                }
+            );
+    }
+
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void getDocumentStaleWhileRevalidate(PluginCall call) {
+        call.setKeepAlive(true);
+        // The cache read and the server read are each timed as a task then a convert phase,
+        // and the call finishes once the server read is handled.
+        PluginMetrics.Operation operation = startMetrics(call);
+        String documentReference = call.getString("reference");
+        Executor executor = implementation.getCallbackExecutor();
+        List<String> fields;
 
         try {
-            mapData = mapJSObject(data);
+            fields = getFields(call);
         } catch (JSONException e) {
+            operation.fail();
             call.reject(e.getMessage(), e);
+            call.release(getBridge());
             return;
         }
+        operation.mark(PluginMetrics.PHASE_DECODE);
+
+        Task<DocumentSnapshot> cachedListener = implementation.getDocument(documentReference, Source.CACHE);
+        Task<DocumentSnapshot> serverListener = implementation.getDocument(documentReference, Source.SERVER);
+        operation.mark(PluginMetrics.PHASE_PREPARE);
+
+        cachedListener.addOnCompleteListener(
+            executor,
+            cached -> {
+                operation.mark(PluginMetrics.PHASE_TASK);
+                DocumentSnapshot cachedSnapshot = cached.isSuccessful() ? cached.getResult() : null;
+                if (cachedSnapshot != null) {
+                    JSObject result = implementation.ConvertSnapshotToJSObject(cachedSnapshot, fields);
+                    result.put("fromCache", true);
+                    operation.mark(PluginMetrics.PHASE_CONVERT);
+                    call.resolve(result);
+                }
+
+                serverListener.addOnCompleteListener(
+                    executor,
+                    server -> {
+                        operation.mark(PluginMetrics.PHASE_TASK);
+                        if (!server.isSuccessful()) {
+                            operation.fail();
+                            if (cachedSnapshot == null) {
+                                call.reject(server.getException().getMessage(), server.getException());
+                            }
+                        } else if (cachedSnapshot == null || !implementation.HasSameData(cachedSnapshot, server.getResult(), fields)) {
+                            JSObject result = implementation.ConvertSnapshotToJSObject(server.getResult(), fields);
+                            result.put("fromCache", false);
+                            operation.mark(PluginMetrics.PHASE_CONVERT);
+                            operation.finish(result, 1);
+                            call.resolve(result);
+                        } else {
+                            operation.finish(null, 0);
+                        }
+
+                        call.release(getBridge());
+                    }
+                );
+            }
+        );
+    }
+
+    @PluginMethod
+    public void updateDocument(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
+        String documentReference = call.getString("reference");
+        JSObject data = call.getObject("data");
 
         Task<Void> listener = null;
         try {
-            pendingActions++;
-            listener = implementation.updateDocument(documentReference, mapData);
+            listener = implementation.updateDocument(documentReference, data);
+            operation.mark(PluginMetrics.PHASE_PREPARE);
+            operation.markOnComplete(listener, implementation.getCallbackExecutor());
+            documentCache.invalidate(documentReference);
+            pendingWrites.track(
+                documentReference,
+                "update",
+                PendingWriteTracker.dataBytes(data),
+                listener,
+                implementation.getCallbackExecutor()
+            );
+            operation.finish(null, 1);
             call.resolve();
         } catch (Exception e) {
+            operation.fail();
             call.reject(e.getMessage(), e);
         }
 
         if (listener != null) {
-            listener.addOnSuccessListener(
-                value -> {
-                    pendingActions--;
-                }
-            );
-
             listener.addOnFailureListener(
+                implementation.getCallbackExecutor(),
                 error -> {
-                    pendingActions--;
                     call.reject(error.getMessage(), error);
                 }
             );
@@ -187,38 +556,35 @@ public class CapacitorFirestorePlugin extends Plugin {
 
     @PluginMethod
     public void setDocument(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
         String documentReference = call.getString("reference");
         JSObject data = call.getObject("data");
         Boolean merge = call.getBoolean("merge", false);
 
-        HashMap<String, Object> mapData;
-
-        try {
-            mapData = mapJSObject(data);
-        } catch (JSONException e) {
-            call.reject(e.getMessage(), e);
-            return;
-        }
-
         Task<Void> listener = null;
         try {
-            pendingActions++;
-            listener = implementation.setDocument(documentReference, mapData, merge);
+            listener = implementation.setDocument(documentReference, data, merge);
+            operation.mark(PluginMetrics.PHASE_PREPARE);
+            operation.markOnComplete(listener, implementation.getCallbackExecutor());
+            documentCache.invalidate(documentReference);
+            pendingWrites.track(
+                documentReference,
+                "set",
+                PendingWriteTracker.dataBytes(data),
+                listener,
+                implementation.getCallbackExecutor()
+            );
+            operation.finish(null, 1);
             call.resolve();
         } catch (Exception e) {
+            operation.fail();
             call.reject(e.getMessage(), e);
         }
 
         if (listener != null) {
-            listener.addOnSuccessListener(
-                value -> {
-                    pendingActions--;
-                }
-            );
-
             listener.addOnFailureListener(
+                implementation.getCallbackExecutor(),
                 error -> {
-                    pendingActions--;
                     call.reject(error.getMessage(), error);
                 }
             );
@@ -227,21 +593,20 @@ public class CapacitorFirestorePlugin extends Plugin {
 
     @PluginMethod
     public void deleteDocument(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
         String documentReference = call.getString("reference");
 
-        pendingActions++;
         Task<Void> listener = implementation.deleteDocument(documentReference);
+        operation.mark(PluginMetrics.PHASE_PREPARE);
+        operation.markOnComplete(listener, implementation.getCallbackExecutor());
+        documentCache.invalidate(documentReference);
+        pendingWrites.track(documentReference, "delete", 0, listener, implementation.getCallbackExecutor());
+        operation.finish(null, 1);
         call.resolve();
 
-        listener.addOnSuccessListener(
-            value -> {
-                pendingActions--;
-            }
-        );
-
         listener.addOnFailureListener(
+            implementation.getCallbackExecutor(),
             error -> {
-                pendingActions--;
                 call.reject(error.getMessage(), error);
             }
         );
@@ -249,143 +614,649 @@ public class CapacitorFirestorePlugin extends Plugin {
 
     @PluginMethod
     public void addDocument(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
         String collectionReference = call.getString("reference");
         JSObject data = call.getObject("data");
 
-        HashMap<String, Object> mapData;
-
-        try {
-            mapData = mapJSObject(data);
-        } catch (JSONException e) {
-            call.reject(e.getMessage(), e);
-            return;
-        }
-
         Task<Void> listener = null;
         try {
-            pendingActions++;
             @SuppressLint("RestrictedApi")
             String docId = Util.autoId();
-            listener = implementation.addDocument(collectionReference, docId, mapData);
+            String documentReference = collectionReference + "/" + docId;
+            listener = implementation.addDocument(collectionReference, docId, data);
+            operation.mark(PluginMetrics.PHASE_PREPARE);
+            operation.markOnComplete(listener, implementation.getCallbackExecutor());
+            pendingWrites.track(
+                documentReference,
+                "add",
+                PendingWriteTracker.dataBytes(data),
+                listener,
+                implementation.getCallbackExecutor()
+            );
             JSObject result = new JSObject();
             result.put("id", docId);
-            result.put("path", collectionReference + "/" + docId);
-            pendingActions--;
+            result.put("path", documentReference);
+            operation.finish(result, 1);
             call.resolve(result);
         } catch (Exception e) {
+            operation.fail();
             call.reject(e.getMessage(), e);
         }
 
         if (listener != null) {
-            listener.addOnSuccessListener(
-                value -> {
-                    pendingActions--;
-                }
-            );
-
             listener.addOnFailureListener(
+                implementation.getCallbackExecutor(),
                 error -> {
-                    pendingActions--;
                     call.reject(error.getMessage(), error);
                 }
             );
         }
     }
 
-    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
-    public void addDocumentSnapshotListener(PluginCall call) {
-        call.setKeepAlive(true);
-        String callbackId = call.getCallbackId();
-        String documentReference = call.getString("reference");
-        ListenerRegistration listener = implementation.addDocumentSnapshotListener(
-            documentReference,
-            (value, error) -> {
-                if (error != null) {
-                    call.reject(error.getMessage(), error);
-                } else {
-                    JSObject result = implementation.ConvertSnapshotToJSObject(value);
+    @PluginMethod
+    public void writeBatch(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
+        JSArray clientOperations = call.getArray("operations");
+
+        if (clientOperations == null) {
+            operation.fail();
+            call.reject("operations is null");
+            return;
+        }
+
+        List<JSBatchOperation> operations;
+        List<Task<Void>> commits;
+
+        try {
+            operations = mapBatchOperations(clientOperations);
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            commits = implementation.commitBatch(operations);
+        } catch (Exception e) {
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        operation.mark(PluginMetrics.PHASE_PREPARE);
+
+        for (int x = 0; x < commits.size(); x++) {
+            int start = x * CapacitorFirestore.MAX_BATCH_OPERATIONS;
+            int end = Math.min(start + CapacitorFirestore.MAX_BATCH_OPERATIONS, operations.size());
+            pendingWrites.trackBatch(operations.subList(start, end), commits.get(x), implementation.getCallbackExecutor());
+        }
+        for (JSBatchOperation batchOperation : operations) {
+            documentCache.invalidate(batchOperation.getReference());
+        }
+
+        Tasks
+            .whenAllComplete(commits)
+            .addOnSuccessListener(
+                implementation.getCallbackExecutor(),
+                value -> {
+                    operation.mark(PluginMetrics.PHASE_TASK);
+                    JSObject result = new JSObject();
+                    JSArray batches = new JSArray();
+
+                    for (int x = 0; x < commits.size(); x++) {
+                        Task<Void> commit = commits.get(x);
+                        int size = Math.min(
+                            CapacitorFirestore.MAX_BATCH_OPERATIONS,
+                            operations.size() - x * CapacitorFirestore.MAX_BATCH_OPERATIONS
+                        );
+
+                        JSObject batch = new JSObject();
+                        batch.put("operations", size);
+                        batch.put("success", commit.isSuccessful());
+                        if (!commit.isSuccessful() && commit.getException() != null) {
+                            batch.put("error", commit.getException().getMessage());
+                        }
+                        batches.put(batch);
+                    }
+
+                    result.put("batches", batches);
+                    operation.finish(result, operations.size());
                     call.resolve(result);
                 }
+            );
+    }
+
+    @PluginMethod
+    public void runTransaction(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
+        JSArray clientReads = call.getArray("reads", new JSArray());
+        JSArray clientOperations = call.getArray("operations", new JSArray());
+        int maxAttempts = call.getInt("maxAttempts", DEFAULT_TRANSACTION_ATTEMPTS);
+        AtomicInteger attempts = new AtomicInteger();
+        long startedAt = System.nanoTime();
+
+        List<JSTransactionOperation> operations;
+        Task<List<DocumentSnapshot>> listener;
+
+        try {
+            operations = mapTransactionOperations(clientOperations);
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            listener = implementation.runTransaction(clientReads.toList(), operations, maxAttempts, attempts);
+        } catch (Exception e) {
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        operation.mark(PluginMetrics.PHASE_PREPARE);
+
+        listener.addOnCompleteListener(
+            implementation.getCallbackExecutor(),
+            task -> {
+                operation.mark(PluginMetrics.PHASE_TASK);
+                JSObject result = new JSObject();
+                result.put("attempts", attempts.get());
+                result.put("latencyMs", (System.nanoTime() - startedAt) / 1000000.0);
+
+                if (!task.isSuccessful()) {
+                    Exception error = task.getException();
+                    operation.fail();
+                    call.reject(error != null ? error.getMessage() : "Transaction failed", null, error, result);
+                    return;
+                }
+
+                for (JSTransactionOperation transactionOperation : operations) {
+                    documentCache.invalidate(transactionOperation.getReference());
+                }
+
+                JSArray documents = new JSArray();
+                for (DocumentSnapshot snapshot : task.getResult()) {
+                    documents.put(implementation.ConvertSnapshotToJSObject(snapshot));
+                }
+                result.put("documents", documents);
+                operation.mark(PluginMetrics.PHASE_CONVERT);
+                operation.finish(result, documents.length());
+                call.resolve(result);
             }
         );
+    }
 
-        listeners.put(callbackId, listener);
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void addDocumentSnapshotListener(PluginCall call) {
+        String documentReference = call.getString("reference");
+        List<String> fields;
+        try {
+            fields = getFields(call);
+        } catch (JSONException e) {
+            call.reject(e.getMessage(), e);
+            return;
+        }
+
+        ListenerOptions options = getListenerOptions(call);
+        this.<DocumentSnapshot>addSharedListener(
+            call,
+            "document|" + documentReference + getFieldsKey(fields) + options.toKey(),
+            snapshot -> {
+                if (!options.getIncludeMetadataChanges()) {
+                    return ConvertAndCacheSnapshot(snapshot, fields);
+                }
+                // Not cached, the metadata is only meant for this listener.
+                return withMetadata(implementation.ConvertSnapshotToJSObject(snapshot, fields), snapshot.getMetadata(), options);
+            },
+            null,
+            options,
+            listener ->
+                implementation.addDocumentSnapshotListener(
+                    documentReference,
+                    options.getMetadataChanges(),
+                    withDocumentCache(documentReference, listener)
+                )
+        );
     }
 
     @PluginMethod
     public void getCollection(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
         String documentReference = call.getString("reference");
         JSArray clientQueryConstraints = call.getArray("queryConstraints");
         Task<QuerySnapshot> listener;
 
         try {
-            List<JSQueryConstraints> queryConstraints = implementation.ConvertJSArrayToQueryConstraints(clientQueryConstraints);
-            listener = implementation.getCollection(documentReference, queryConstraints);
+            Source source = implementation.ConvertSource(call.getString("source"));
+            List<String> fields = getFields(call);
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            listener = implementation.getCollection(documentReference, clientQueryConstraints, source);
+            operation.mark(PluginMetrics.PHASE_PREPARE);
 
             listener.addOnSuccessListener(
+                implementation.getCallbackExecutor(),
                 value -> {
-                    JSObject result = new JSObject();
-                    JSArray items = new JSArray();
-
-                    List<DocumentSnapshot> documents = value.getDocuments();
-                    for (DocumentSnapshot documentSnapshot : documents) {
-                        JSObject item = implementation.ConvertSnapshotToJSObject(documentSnapshot);
-                        items.put(item);
-                    }
-
-                    result.put("collection", items);
+                    operation.mark(PluginMetrics.PHASE_TASK);
+                    JSObject result = implementation.ConvertQuerySnapshotToJSObject(value, fields);
+                    operation.mark(PluginMetrics.PHASE_CONVERT);
+                    operation.finish(result, value.size());
                     call.resolve(result);
                 }
             );
 
             listener.addOnFailureListener(
+                implementation.getCallbackExecutor(),
                 error -> {
+                    operation.fail();
                     call.reject(error.getMessage(), error);
                 }
             );
         } catch (Exception e) {
             e.printStackTrace();
+            operation.fail();
             call.reject(e.getMessage(), e);
         }
     }
 
+    @PluginMethod
+    public void getAggregate(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
+        String collectionReference = call.getString("reference");
+        JSArray clientQueryConstraints = call.getArray("queryConstraints");
+        JSArray clientAggregates = call.getArray("aggregates");
+        Task<Map<String, Object>> listener;
+
+        if (clientAggregates == null) {
+            operation.fail();
+            call.reject("aggregates is null");
+            return;
+        }
+
+        try {
+            Source source = implementation.ConvertSource(call.getString("source"));
+            List<JSAggregateField> fields = mapAggregateFields(clientAggregates);
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            listener = implementation.getAggregate(collectionReference, clientQueryConstraints, fields, source);
+        } catch (Exception e) {
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            return;
+        }
+        operation.mark(PluginMetrics.PHASE_PREPARE);
+
+        listener.addOnSuccessListener(
+            implementation.getCallbackExecutor(),
+            value -> {
+                operation.mark(PluginMetrics.PHASE_TASK);
+                JSObject data = new JSObject();
+                for (Map.Entry<String, Object> entry : value.entrySet()) {
+                    data.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : JSONObject.NULL);
+                }
+
+                JSObject result = new JSObject();
+                result.put("data", data);
+                operation.mark(PluginMetrics.PHASE_CONVERT);
+                operation.finish(result, 0);
+                call.resolve(result);
+            }
+        );
+
+        listener.addOnFailureListener(
+            implementation.getCallbackExecutor(),
+            error -> {
+                operation.fail();
+                call.reject(error.getMessage(), error);
+            }
+        );
+    }
+
     @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
-    public void addCollectionSnapshotListener(PluginCall call) {
+    public void getCollectionStaleWhileRevalidate(PluginCall call) {
         call.setKeepAlive(true);
-        String callbackId = call.getCallbackId();
+        // Timed the same way as getDocumentStaleWhileRevalidate.
+        PluginMetrics.Operation operation = startMetrics(call);
         String collectionReference = call.getString("reference");
         JSArray clientQueryConstraints = call.getArray("queryConstraints");
-        ListenerRegistration listener = null;
+        Executor executor = implementation.getCallbackExecutor();
+
         try {
-            List<JSQueryConstraints> queryConstraints = implementation.ConvertJSArrayToQueryConstraints(clientQueryConstraints);
-            listener =
-                implementation.addCollectionSnapshotListener(
-                    collectionReference,
-                    queryConstraints,
-                    (value, error) -> {
-                        if (error != null) {
-                            call.reject(error.getMessage(), error);
-                        } else {
-                            JSObject result = new JSObject();
-                            JSArray items = new JSArray();
+            List<String> fields = getFields(call);
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            Task<QuerySnapshot> cachedListener = implementation.getCollection(collectionReference, clientQueryConstraints, Source.CACHE);
+            Task<QuerySnapshot> serverListener = implementation.getCollection(collectionReference, clientQueryConstraints, Source.SERVER);
+            operation.mark(PluginMetrics.PHASE_PREPARE);
+
+            cachedListener.addOnCompleteListener(
+                executor,
+                cached -> {
+                    operation.mark(PluginMetrics.PHASE_TASK);
+                    QuerySnapshot cachedSnapshot = cached.isSuccessful() ? cached.getResult() : null;
+                    if (cachedSnapshot != null) {
+                        JSObject result = implementation.ConvertQuerySnapshotToJSObject(cachedSnapshot, fields);
+                        result.put("fromCache", true);
+                        operation.mark(PluginMetrics.PHASE_CONVERT);
+                        call.resolve(result);
+                    }
 
-                            List<DocumentSnapshot> documents = value.getDocuments();
-                            for (DocumentSnapshot documentSnapshot : documents) {
-                                JSObject item = implementation.ConvertSnapshotToJSObject(documentSnapshot);
-                                items.put(item);
+                    serverListener.addOnCompleteListener(
+                        executor,
+                        server -> {
+                            operation.mark(PluginMetrics.PHASE_TASK);
+                            if (!server.isSuccessful()) {
+                                operation.fail();
+                                if (cachedSnapshot == null) {
+                                    call.reject(server.getException().getMessage(), server.getException());
+                                }
+                            } else if (cachedSnapshot == null || !implementation.HasSameData(cachedSnapshot, server.getResult(), fields)) {
+                                JSObject result = implementation.ConvertQuerySnapshotToJSObject(server.getResult(), fields);
+                                result.put("fromCache", false);
+                                operation.mark(PluginMetrics.PHASE_CONVERT);
+                                operation.finish(result, server.getResult().size());
+                                call.resolve(result);
+                            } else {
+                                operation.finish(null, 0);
                             }
 
-                            result.put("collection", items);
-                            call.resolve(result);
+                            call.release(getBridge());
                         }
+                    );
+                }
+            );
+        } catch (Exception e) {
+            e.printStackTrace();
+            operation.fail();
+            call.reject(e.getMessage(), e);
+            call.release(getBridge());
+        }
+    }
+
+    @PluginMethod
+    public void getCollectionPage(PluginCall call) {
+        PluginMetrics.Operation operation = startMetrics(call);
+        String collectionReference = call.getString("reference");
+        JSArray clientQueryConstraints = call.getArray("queryConstraints");
+        String cursor = call.getString("cursor");
+        int pageSize = call.getInt("pageSize", DEFAULT_PAGE_SIZE);
+
+        if (pageSize <= 0) {
+            operation.fail();
+            call.reject("pageSize must be greater than 0");
+            return;
+        }
+
+        try {
+            CollectionPageCursor pageCursor = implementation.GetPageCursor(collectionReference, clientQueryConstraints, cursor);
+            Source source = implementation.ConvertSource(call.getString("source"));
+            List<String> fields = getFields(call);
+            operation.mark(PluginMetrics.PHASE_DECODE);
+            Task<QuerySnapshot> listener = implementation.getCollectionPage(pageCursor, pageSize, source);
+            operation.mark(PluginMetrics.PHASE_PREPARE);
+
+            listener.addOnSuccessListener(
+                implementation.getCallbackExecutor(),
+                value -> {
+                    operation.mark(PluginMetrics.PHASE_TASK);
+                    JSObject result = implementation.ConvertQuerySnapshotToJSObject(value, fields);
+                    String nextCursor = implementation.StorePageCursor(pageCursor, value, pageSize);
+                    if (nextCursor != null) {
+                        result.put("cursor", nextCursor);
                     }
-                );
+                    operation.mark(PluginMetrics.PHASE_CONVERT);
+                    operation.finish(result, value.size());
+                    call.resolve(result);
+                }
+            );
+
+            listener.addOnFailureListener(
+                implementation.getCallbackExecutor(),
+                error -> {
+                    operation.fail();
+                    call.reject(error.getMessage(), error);
+                }
+            );
         } catch (Exception e) {
             e.printStackTrace();
+            operation.fail();
             call.reject(e.getMessage(), e);
         }
+    }
+
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void addCollectionSnapshotListener(PluginCall call) {
+        String collectionReference = call.getString("reference");
+        JSArray clientQueryConstraints = call.getArray("queryConstraints");
+        ListenerOptions options = getListenerOptions(call);
+        List<String> fields;
+        String key;
+        try {
+            fields = getFields(call);
+            key = "collection|" + QueryKey.canonical(collectionReference, clientQueryConstraints) + getFieldsKey(fields) + options.toKey();
+        } catch (JSONException e) {
+            call.reject(e.getMessage(), e);
+            return;
+        }
+
+        this.<QuerySnapshot>addSharedListener(
+            call,
+            key,
+            snapshot ->
+                withMetadata(
+                    CacheConvertedDocuments(implementation.ConvertQuerySnapshotToJSObject(snapshot, fields), fields),
+                    snapshot.getMetadata(),
+                    options
+                ),
+            null,
+            options,
+            listener ->
+                implementation.addCollectionSnapshotListener(
+                    collectionReference,
+                    clientQueryConstraints,
+                    options.getMetadataChanges(),
+                    withDocumentCache(listener)
+                )
+        );
+    }
+
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void addCollectionChangesListener(PluginCall call) {
+        String collectionReference = call.getString("reference");
+        JSArray clientQueryConstraints = call.getArray("queryConstraints");
+        ListenerOptions options = getListenerOptions(call);
+        List<String> fields;
+        String key;
+        try {
+            fields = getFields(call);
+            key = "changes|" + QueryKey.canonical(collectionReference, clientQueryConstraints) + getFieldsKey(fields) + options.toKey();
+        } catch (JSONException e) {
+            call.reject(e.getMessage(), e);
+            return;
+        }
+
+        this.<QuerySnapshot>addSharedListener(
+            call,
+            key,
+            snapshot ->
+                withMetadata(
+                    CacheConvertedDocuments(implementation.ConvertQuerySnapshotToJSObject(snapshot, fields), fields),
+                    snapshot.getMetadata(),
+                    options
+                ),
+            (previous, snapshot, coalesced) -> {
+                JSObject changes = coalesced
+                    ? implementation.ConvertSnapshotDiffToJSObject(previous, snapshot, fields)
+                    : implementation.ConvertDocumentChangesToJSObject(snapshot, fields);
+                return withMetadata(CacheConvertedDocuments(changes, fields), snapshot.getMetadata(), options);
+            },
+            options,
+            listener ->
+                implementation.addCollectionSnapshotListener(
+                    collectionReference,
+                    clientQueryConstraints,
+                    options.getMetadataChanges(),
+                    withDocumentCache(listener)
+                )
+        );
+    }
+
+    private ListenerOptions getListenerOptions(PluginCall call) {
+        return new ListenerOptions(
+            call.getData().optLong("throttleMs", 0),
+            call.getData().optLong("debounceMs", 0),
+            call.getBoolean("includeMetadataChanges", false)
+        );
+    }
+
+    private JSObject withMetadata(JSObject result, SnapshotMetadata metadata, ListenerOptions options) {
+        if (options.getIncludeMetadataChanges()) {
+            result.put("metadata", implementation.ConvertSnapshotMetadata(metadata));
+        }
+        return result;
+    }
+
+    /**
+     * Wraps a collection listener to invalidate the cached documents that changed in every
+     * snapshot, including the snapshots that are coalesced and never delivered. The documents
+     * are cached again from the payloads converted for the snapshots that are delivered.
+     */
+    private EventListener<QuerySnapshot> withDocumentCache(EventListener<QuerySnapshot> listener) {
+        return (snapshot, error) -> {
+            if (snapshot != null) {
+                InvalidateDocumentChanges(snapshot);
+            }
+            listener.onEvent(snapshot, error);
+        };
+    }
+
+    /**
+     * Wraps a document listener to invalidate the cached document on every snapshot, including
+     * the snapshots that are coalesced, projected or sent with metadata and so never cached. The
+     * document is cached again from the full payloads that are delivered.
+     */
+    private EventListener<DocumentSnapshot> withDocumentCache(String path, EventListener<DocumentSnapshot> listener) {
+        return (snapshot, error) -> {
+            if (snapshot != null) {
+                documentCache.invalidate(path);
+            }
+            listener.onEvent(snapshot, error);
+        };
+    }
+
+    /**
+     * Returns the field paths to read, or null to read every field.
+     */
+    private List<String> getFields(PluginCall call) throws JSONException {
+        JSArray fields = call.getArray("fields");
+        return fields != null ? fields.toList() : null;
+    }
+
+    private String getFieldsKey(List<String> fields) {
+        if (fields == null) {
+            return "";
+        }
 
-        listeners.put(callbackId, listener);
+        List<String> sortedFields = new ArrayList<>(fields);
+        Collections.sort(sortedFields);
+        return "|fields:" + new JSONArray(sortedFields);
+    }
+
+    /**
+     * Converts the snapshot and caches it, unless it is projected to some fields.
+     */
+    private JSObject ConvertAndCacheSnapshot(DocumentSnapshot snapshot, List<String> fields) {
+        JSObject result = implementation.ConvertSnapshotToJSObject(snapshot, fields);
+        if (fields == null) {
+            documentCache.put(snapshot.getReference().getPath(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the documents that changed in a collection snapshot from the document cache.
+     */
+    private void InvalidateDocumentChanges(QuerySnapshot snapshot) {
+        DocumentCache cache = documentCache;
+        if (!cache.isEnabled()) {
+            return;
+        }
+
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            cache.invalidate(change.getDocument().getReference().getPath());
+        }
+    }
+
+    /**
+     * Caches the documents of a converted collection snapshot, or of its added and modified
+     * documents, reusing the payloads sent to the listener instead of converting them again.
+     * Projected payloads are not cached, as the cache holds full documents only.
+     */
+    private JSObject CacheConvertedDocuments(JSObject result, List<String> fields) {
+        DocumentCache cache = documentCache;
+        if (fields != null || !cache.isEnabled()) {
+            return result;
+        }
+
+        JSONArray collection = result.optJSONArray("collection");
+        if (collection != null) {
+            for (int x = 0; x < collection.length(); x++) {
+                JSObject document = (JSObject) collection.opt(x);
+                cache.put(document.getString("path"), document);
+            }
+        }
+
+        JSONArray changes = result.optJSONArray("changes");
+        if (changes != null) {
+            for (int x = 0; x < changes.length(); x++) {
+                JSONObject change = changes.optJSONObject(x);
+                if (!"removed".equals(change.optString("type"))) {
+                    JSObject document = (JSObject) change.opt("document");
+                    cache.put(document.getString("path"), document);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private <T> void addSharedListener(
+        PluginCall call,
+        String key,
+        SharedSnapshotListener.Converter<T> fullConverter,
+        SharedSnapshotListener.ChangesConverter<T> changesConverter,
+        ListenerOptions options,
+        SharedSnapshotListener.Registrar<T> registrar
+    ) {
+        call.setKeepAlive(true);
+
+        PluginMetrics metrics = this.metrics;
+        if (!metrics.isEnabled()) {
+            listeners.subscribe(call, key, fullConverter, changesConverter, options, registrar);
+            return;
+        }
+
+        // Shared listeners are counted against the method of the call that created them.
+        String method = call.getMethodName();
+        metrics.start(method, call.getData());
+
+        SharedSnapshotListener.Converter<T> measuredFullConverter = snapshot -> {
+            long startedAt = System.nanoTime();
+            JSObject result = fullConverter.convert(snapshot);
+            metrics.recordEventDelivered(method, startedAt, result);
+            return result;
+        };
+
+        SharedSnapshotListener.ChangesConverter<T> measuredChangesConverter = null;
+        if (changesConverter != null) {
+            measuredChangesConverter =
+                (previous, snapshot, coalesced) -> {
+                    long startedAt = System.nanoTime();
+                    JSObject result = changesConverter.convert(previous, snapshot, coalesced);
+                    metrics.recordEventDelivered(method, startedAt, result);
+                    return result;
+                };
+        }
+
+        SharedSnapshotListener.Registrar<T> measuredRegistrar = listener ->
+            registrar.register(
+                (snapshot, error) -> {
+                    if (snapshot != null) {
+                        metrics.recordEventReceived(method, snapshot);
+                    }
+                    listener.onEvent(snapshot, error);
+                }
+            );
+
+        listeners.subscribe(call, key, measuredFullConverter, measuredChangesConverter, options, measuredRegistrar);
+    }
+
+    private PluginMetrics.Operation startMetrics(PluginCall call) {
+        return metrics.start(call.getMethodName(), call.getData());
     }
 
     @PluginMethod
@@ -393,12 +1264,15 @@ public class CapacitorFirestorePlugin extends Plugin {
         Task<Void> listener = implementation.enableNetwork();
 
         listener.addOnSuccessListener(
+            implementation.getCallbackExecutor(),
             value -> {
+                pendingWrites.startReplay();
                 call.resolve();
             }
         );
 
         listener.addOnFailureListener(
+            implementation.getCallbackExecutor(),
             error -> {
                 call.reject(error.getMessage(), error);
             }
@@ -410,54 +1284,93 @@ public class CapacitorFirestorePlugin extends Plugin {
         Task<Void> listener = implementation.disableNetwork();
 
         listener.addOnSuccessListener(
+            implementation.getCallbackExecutor(),
             value -> {
+                pendingWrites.stopReplay();
                 call.resolve();
             }
         );
 
         listener.addOnFailureListener(
+            implementation.getCallbackExecutor(),
             error -> {
                 call.reject(error.getMessage(), error);
             }
         );
     }
 
-    private HashMap<String, Object> mapJSObject(JSONObject jsObject) throws JSONException {
-        HashMap<String, Object> mapData = new HashMap<>();
-        Iterator<String> keys = jsObject.keys();
+    private List<JSBatchOperation> mapBatchOperations(JSONArray array) throws JSONException {
+        ArrayList<JSBatchOperation> operations = new ArrayList<>(array.length());
+        for (int x = 0; x < array.length(); x++) {
+            JSONObject item = array.getJSONObject(x);
+            String type = item.getString("type");
+            String reference = item.getString("reference");
+            JSONObject data = item.optJSONObject("data");
+            boolean merge = item.optBoolean("merge", false);
+
+            operations.add(new JSBatchOperation(type, reference, data, merge));
+        }
+
+        return operations;
+    }
 
-        while (keys.hasNext()) {
-            String key = keys.next();
-            Object value = jsObject.get(key);
+    private List<JSTransactionOperation> mapTransactionOperations(JSONArray array) throws JSONException {
+        ArrayList<JSTransactionOperation> operations = new ArrayList<>(array.length());
+        for (int x = 0; x < array.length(); x++) {
+            JSONObject item = array.getJSONObject(x);
+            String type = item.getString("type");
+            String reference = item.getString("reference");
+            JSONObject data = item.optJSONObject("data");
+            boolean merge = item.optBoolean("merge", false);
+            String fieldPath = item.has("fieldPath") ? item.getString("fieldPath") : null;
+
+            Number amount = null;
+            if (item.has("value")) {
+                Object value = item.get("value");
+                if (!(value instanceof Number)) {
+                    throw new JSONException("transaction increment value must be a number: " + reference);
+                }
+                amount = (Number) value;
+            }
 
-            if (value.toString().equals("null")) {
-                value = null;
-            } else if (value instanceof JSONObject) {
-                value = mapJSObject((JSONObject) value);
-            } else if (value instanceof JSONArray) {
-                value = mapJSArray((JSONArray) value);
+            Boolean conditionExists = null;
+            String conditionFieldPath = null;
+            Object conditionValue = null;
+            JSONObject condition = item.optJSONObject("condition");
+            if (condition != null) {
+                conditionExists = condition.has("exists") ? condition.getBoolean("exists") : null;
+                conditionFieldPath = condition.has("fieldPath") ? condition.getString("fieldPath") : null;
+                conditionValue = condition.isNull("equals") ? null : condition.get("equals");
             }
 
-            mapData.put(key, value);
+            operations.add(
+                new JSTransactionOperation(
+                    type,
+                    reference,
+                    data,
+                    merge,
+                    fieldPath,
+                    amount,
+                    conditionExists,
+                    conditionFieldPath,
+                    conditionValue
+                )
+            );
         }
 
-        return mapData;
+        return operations;
     }
 
-    private ArrayList<Object> mapJSArray(JSONArray array) throws JSONException {
-        ArrayList<Object> arrayList = new ArrayList<>();
+    private List<JSAggregateField> mapAggregateFields(JSONArray array) throws JSONException {
+        ArrayList<JSAggregateField> fields = new ArrayList<>(array.length());
         for (int x = 0; x < array.length(); x++) {
-            Object value = array.get(x);
-
-            if (value instanceof JSONObject) {
-                value = mapJSObject((JSONObject) value);
-            } else if (value instanceof JSONArray) {
-                value = mapJSArray((JSONArray) value);
-            }
+            JSONObject item = array.getJSONObject(x);
+            String type = item.getString("type");
+            String fieldPath = item.has("fieldPath") ? item.getString("fieldPath") : null;
 
-            arrayList.add(value);
+            fields.add(new JSAggregateField(item.getString("alias"), type, fieldPath));
         }
 
-        return arrayList;
+        return fields;
     }
 }
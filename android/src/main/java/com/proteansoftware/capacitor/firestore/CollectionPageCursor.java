@@ -0,0 +1,23 @@
+package com.proteansoftware.capacitor.firestore;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+
+public class CollectionPageCursor {
+
+    private Query query;
+    private DocumentSnapshot lastDocument;
+
+    public CollectionPageCursor(Query query, DocumentSnapshot lastDocument) {
+        this.query = query;
+        this.lastDocument = lastDocument;
+    }
+
+    public Query getQuery() {
+        return this.query;
+    }
+
+    public DocumentSnapshot getLastDocument() {
+        return this.lastDocument;
+    }
+}
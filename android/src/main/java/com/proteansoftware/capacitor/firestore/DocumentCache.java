@@ -0,0 +1,130 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.util.LruCache;
+import com.getcapacitor.JSObject;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of converted document payloads keyed by document path. Entries are
+ * evicted least recently used first once the byte budget is exceeded, and expire after
+ * the configured time to live. A budget of 0 disables the cache.
+ */
+public class DocumentCache {
+
+    private static class Entry {
+
+        private final JSObject payload;
+        private final int bytes;
+        private final long expiresAt;
+
+        private Entry(JSObject payload, int bytes, long expiresAt) {
+            this.payload = payload;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxBytes;
+    private final long ttlMillis;
+    private final LruCache<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocumentCache(int maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.entries =
+            maxBytes > 0
+                ? new LruCache<String, Entry>(maxBytes) {
+                    @Override
+                    protected int sizeOf(String key, Entry value) {
+                        return value.bytes;
+                    }
+
+                    @Override
+                    protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+                        if (evicted) {
+                            evictions.incrementAndGet();
+                        }
+                    }
+                }
+                : null;
+    }
+
+    public boolean isEnabled() {
+        return this.entries != null;
+    }
+
+    /**
+     * Returns the cached payload for the document, or null if it is not cached or has expired.
+     */
+    public JSObject get(String path) {
+        if (this.entries == null) {
+            return null;
+        }
+
+        Entry entry = this.entries.get(path);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            this.entries.remove(path);
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        this.hits.incrementAndGet();
+        return entry.payload;
+    }
+
+    /**
+     * Caches the payload for the document. The payload must not be modified afterwards,
+     * as it is resolved as is on later hits.
+     */
+    public void put(String path, JSObject payload) {
+        if (this.entries == null) {
+            return;
+        }
+
+        int bytes = PayloadSize.utf16Bytes(payload);
+        if (bytes > this.maxBytes) {
+            this.entries.remove(path);
+            return;
+        }
+
+        this.entries.put(path, new Entry(payload, bytes, System.currentTimeMillis() + this.ttlMillis));
+    }
+
+    public void invalidate(String path) {
+        if (this.entries != null) {
+            this.entries.remove(path);
+        }
+    }
+
+    /**
+     * Removes every entry. Entries removed this way are not counted as evictions.
+     */
+    public void clear() {
+        if (this.entries == null) {
+            return;
+        }
+
+        for (String path : this.entries.snapshot().keySet()) {
+            this.entries.remove(path);
+        }
+    }
+
+    public JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("hits", this.hits.get());
+        stats.put("misses", this.misses.get());
+        stats.put("evictions", this.evictions.get());
+        stats.put("entries", this.entries != null ? this.entries.snapshot().size() : 0);
+        stats.put("sizeBytes", this.entries != null ? this.entries.size() : 0);
+        stats.put("maxSizeBytes", this.maxBytes);
+        return stats;
+    }
+}
@@ -0,0 +1,303 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.util.Base64;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.GeoPoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Converts values between the types Firestore reads and writes and the JSON values sent over
+ * the bridge. Conversions are looked up by the exact class of the value, falling back to the
+ * Map and List interfaces for other collection classes. Values JSON cannot represent are sent
+ * as objects with a specialType, and read back from them when writing.
+ */
+public class FirestoreValueCodec {
+
+    private interface Reader {
+        Object read(Object value);
+    }
+
+    private interface Writer {
+        Object write(Object value) throws Exception;
+    }
+
+    private final FirebaseFirestore db;
+    private final Map<Class<?>, Reader> readers = new HashMap<>();
+    private final Map<Class<?>, Writer> writers = new HashMap<>();
+
+    /**
+     * @param db resolves the paths of DocumentReference values when writing
+     */
+    public FirestoreValueCodec(FirebaseFirestore db) {
+        this.db = db;
+
+        Reader sameRead = value -> value;
+        this.readers.put(String.class, sameRead);
+        this.readers.put(Boolean.class, sameRead);
+        this.readers.put(Long.class, sameRead);
+        this.readers.put(Integer.class, sameRead);
+        this.readers.put(Double.class, value -> this.readDouble((Double) value));
+        this.readers.put(HashMap.class, value -> this.readMap((Map<String, Object>) value));
+        this.readers.put(ArrayList.class, value -> this.readList((List<Object>) value));
+        this.readers.put(Timestamp.class, value -> this.readTimestamp((Timestamp) value));
+        this.readers.put(GeoPoint.class, value -> this.readGeoPoint((GeoPoint) value));
+        this.readers.put(DocumentReference.class, value -> this.readDocumentReference((DocumentReference) value));
+        this.readers.put(Blob.class, value -> this.readBlob((Blob) value));
+
+        Writer sameWrite = value -> value;
+        this.writers.put(String.class, sameWrite);
+        this.writers.put(Boolean.class, sameWrite);
+        this.writers.put(Long.class, sameWrite);
+        this.writers.put(Integer.class, sameWrite);
+        this.writers.put(Double.class, sameWrite);
+        this.writers.put(HashMap.class, value -> this.writeMap((Map<String, Object>) value));
+        this.writers.put(ArrayList.class, value -> this.writeList((List<Object>) value));
+        this.writers.put(JSONObject.class, value -> this.writeJSONObject((JSONObject) value));
+        this.writers.put(JSObject.class, value -> this.writeJSONObject((JSONObject) value));
+        this.writers.put(JSONArray.class, value -> this.writeJSONArray((JSONArray) value));
+        this.writers.put(JSArray.class, value -> this.writeJSONArray((JSONArray) value));
+    }
+
+    /**
+     * Converts a value read from Firestore into a value that can be put in a JSObject.
+     */
+    public Object read(Object value) {
+        if (value == null) {
+            // A plain null would remove the key from the JSObject instead.
+            return JSONObject.NULL;
+        }
+
+        Reader reader = this.readers.get(value.getClass());
+        if (reader != null) {
+            return reader.read(value);
+        } else if (value instanceof Map) {
+            return this.readMap((Map<String, Object>) value);
+        } else if (value instanceof List) {
+            return this.readList((List<Object>) value);
+        } else if (value instanceof Number) {
+            return value;
+        }
+
+        return value.toString();
+    }
+
+    public JSObject readMap(Map<String, Object> map) {
+        JSObject result = new JSObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            result.put(entry.getKey(), this.read(entry.getValue()));
+        }
+        return result;
+    }
+
+    private JSArray readList(List<Object> list) {
+        JSArray result = new JSArray();
+        for (Object item : list) {
+            result.put(this.read(item));
+        }
+        return result;
+    }
+
+    private Object readDouble(Double value) {
+        if (!value.isNaN() && !value.isInfinite()) {
+            return value;
+        }
+
+        JSObject result = new JSObject();
+        result.put("value", value.toString());
+        result.put("specialType", "Double");
+        return result;
+    }
+
+    private JSObject readTimestamp(Timestamp value) {
+        JSObject result = new JSObject();
+        result.put("seconds", value.getSeconds());
+        result.put("nanoseconds", value.getNanoseconds());
+        result.put("specialType", "Timestamp");
+        return result;
+    }
+
+    private JSObject readGeoPoint(GeoPoint value) {
+        JSObject result = new JSObject();
+        result.put("latitude", value.getLatitude());
+        result.put("longitude", value.getLongitude());
+        result.put("specialType", "GeoPoint");
+        return result;
+    }
+
+    private JSObject readDocumentReference(DocumentReference value) {
+        JSObject result = new JSObject();
+        result.put("path", value.getPath());
+        result.put("specialType", "DocumentReference");
+        return result;
+    }
+
+    private JSObject readBlob(Blob value) {
+        JSObject result = new JSObject();
+        result.put("base64", Base64.encodeToString(value.toBytes(), Base64.NO_WRAP));
+        result.put("specialType", "Blob");
+        return result;
+    }
+
+    /**
+     * Converts a value received from the bridge into a value Firestore can write.
+     */
+    public Object write(Object value) throws Exception {
+        if (value == null || value == JSONObject.NULL) {
+            return null;
+        }
+
+        Writer writer = this.writers.get(value.getClass());
+        if (writer != null) {
+            return writer.write(value);
+        } else if (value instanceof Map) {
+            return this.writeMap((Map<String, Object>) value);
+        } else if (value instanceof List) {
+            return this.writeList((List<Object>) value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Converts the fields of a document received from the bridge in a single pass, straight
+     * from the JSONObject into the map Firestore writes.
+     */
+    public Map<String, Object> writeData(JSONObject data) throws Exception {
+        Map<String, Object> result = new HashMap<>(Capacity(data.length()));
+        Iterator<String> keys = data.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            result.put(key, this.write(data.get(key)));
+        }
+        return result;
+    }
+
+    private Object writeMap(Map<String, Object> map) throws Exception {
+        Object specialType = map.get("specialType");
+        if (specialType instanceof String) {
+            return this.writeSpecialType((String) specialType, map);
+        }
+
+        Map<String, Object> result = new HashMap<>(Capacity(map.size()));
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            result.put(entry.getKey(), this.write(entry.getValue()));
+        }
+        return result;
+    }
+
+    private List<Object> writeList(List<Object> list) throws Exception {
+        List<Object> result = new ArrayList<>(list.size());
+        for (Object item : list) {
+            result.add(this.write(item));
+        }
+        return result;
+    }
+
+    private Object writeJSONObject(JSONObject object) throws Exception {
+        Object specialType = object.opt("specialType");
+        if (!(specialType instanceof String)) {
+            return this.writeData(object);
+        }
+
+        // Special types only have a few fields, copied as is for writeSpecialType to read.
+        Map<String, Object> fields = new HashMap<>(Capacity(object.length()));
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            fields.put(key, object.get(key));
+        }
+        return this.writeSpecialType((String) specialType, fields);
+    }
+
+    private List<Object> writeJSONArray(JSONArray array) throws Exception {
+        List<Object> result = new ArrayList<>(array.length());
+        for (int x = 0; x < array.length(); x++) {
+            result.add(this.write(array.get(x)));
+        }
+        return result;
+    }
+
+    /**
+     * Converts a value marked with a specialType into the value or FieldValue sentinel it stands for.
+     */
+    private Object writeSpecialType(String specialType, Map<String, Object> fields) throws Exception {
+        switch (specialType) {
+            case "Timestamp":
+                Number seconds = this.requireNumber(fields, "seconds");
+                Number nanoseconds = this.requireNumber(fields, "nanoseconds");
+                return new Timestamp(seconds.longValue(), nanoseconds.intValue());
+            case "GeoPoint":
+                Number latitude = this.requireNumber(fields, "latitude");
+                Number longitude = this.requireNumber(fields, "longitude");
+                return new GeoPoint(latitude.doubleValue(), longitude.doubleValue());
+            case "DocumentReference":
+                return this.db.document(this.requireString(fields, "path"));
+            case "Blob":
+                return Blob.fromBytes(Base64.decode(this.requireString(fields, "base64"), Base64.NO_WRAP));
+            case "Double":
+                return Double.valueOf(this.requireString(fields, "value"));
+            case "Increment":
+                return increment(this.requireNumber(fields, "value"));
+            case "ArrayUnion":
+                return FieldValue.arrayUnion(this.writeElements(fields.get("elements")));
+            case "ArrayRemove":
+                return FieldValue.arrayRemove(this.writeElements(fields.get("elements")));
+            case "ServerTimestamp":
+                return FieldValue.serverTimestamp();
+            case "DeleteField":
+                return FieldValue.delete();
+            default:
+                throw new Exception("Unhandled specialType:" + specialType);
+        }
+    }
+
+    private Object[] writeElements(Object elements) throws Exception {
+        Object converted = this.write(elements);
+        if (!(converted instanceof List)) {
+            throw new Exception("elements must be an array: " + elements);
+        }
+        return ((List<Object>) converted).toArray();
+    }
+
+    private Number requireNumber(Map<String, Object> fields, String name) throws Exception {
+        Object value = fields.get(name);
+        if (!(value instanceof Number)) {
+            throw new Exception(name + " must be a number: " + value);
+        }
+        return (Number) value;
+    }
+
+    private String requireString(Map<String, Object> fields, String name) throws Exception {
+        Object value = fields.get(name);
+        if (!(value instanceof String)) {
+            throw new Exception(name + " must be a string: " + value);
+        }
+        return (String) value;
+    }
+
+    /**
+     * The initial capacity a HashMap needs to hold the given number of entries without resizing.
+     */
+    static int Capacity(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f) + 1;
+    }
+
+    public static FieldValue increment(Number amount) {
+        if (amount instanceof Double || amount instanceof Float) {
+            return FieldValue.increment(amount.doubleValue());
+        }
+        return FieldValue.increment(amount.longValue());
+    }
+}
@@ -0,0 +1,26 @@
+package com.proteansoftware.capacitor.firestore;
+
+public class JSAggregateField {
+
+    private String alias;
+    private String type;
+    private String fieldPath;
+
+    public JSAggregateField(String alias, String type, String fieldPath) {
+        this.alias = alias;
+        this.type = type;
+        this.fieldPath = fieldPath;
+    }
+
+    public String getAlias() {
+        return this.alias;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getFieldPath() {
+        return this.fieldPath;
+    }
+}
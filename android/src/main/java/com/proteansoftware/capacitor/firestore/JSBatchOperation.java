@@ -0,0 +1,34 @@
+package com.proteansoftware.capacitor.firestore;
+
+import org.json.JSONObject;
+
+public class JSBatchOperation {
+
+    private String type;
+    private String reference;
+    private JSONObject data;
+    private Boolean merge;
+
+    public JSBatchOperation(String type, String reference, JSONObject data, Boolean merge) {
+        this.type = type;
+        this.reference = reference;
+        this.data = data;
+        this.merge = merge;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getReference() {
+        return this.reference;
+    }
+
+    public JSONObject getData() {
+        return this.data;
+    }
+
+    public Boolean getMerge() {
+        return this.merge;
+    }
+}
@@ -1,15 +1,44 @@
 package com.proteansoftware.capacitor.firestore;
 
+import java.util.List;
+
 public class JSQueryConstraints {
 
+    private String type;
     private String fieldPath;
     private String operation;
     private Object value;
+    private String direction;
+    private long limit;
+    private List<Object> values;
+    private List<JSQueryConstraints> queryConstraints;
 
     public JSQueryConstraints(String fieldPath, String operation, Object value) {
+        this("where", fieldPath, operation, value, null, 0, null, null);
+    }
+
+    public JSQueryConstraints(
+        String type,
+        String fieldPath,
+        String operation,
+        Object value,
+        String direction,
+        long limit,
+        List<Object> values,
+        List<JSQueryConstraints> queryConstraints
+    ) {
+        this.type = type;
         this.fieldPath = fieldPath;
         this.operation = operation;
         this.value = value;
+        this.direction = direction;
+        this.limit = limit;
+        this.values = values;
+        this.queryConstraints = queryConstraints;
+    }
+
+    public String getType() {
+        return this.type;
     }
 
     public String getFieldPath() {
@@ -23,4 +52,20 @@ public class JSQueryConstraints {
     public Object getValue() {
         return this.value;
     }
+
+    public String getDirection() {
+        return this.direction;
+    }
+
+    public long getLimit() {
+        return this.limit;
+    }
+
+    public List<Object> getValues() {
+        return this.values;
+    }
+
+    public List<JSQueryConstraints> getQueryConstraints() {
+        return this.queryConstraints;
+    }
 }
@@ -0,0 +1,78 @@
+package com.proteansoftware.capacitor.firestore;
+
+import org.json.JSONObject;
+
+public class JSTransactionOperation {
+
+    private String type;
+    private String reference;
+    private JSONObject data;
+    private Boolean merge;
+    private String fieldPath;
+    private Number amount;
+    private Boolean conditionExists;
+    private String conditionFieldPath;
+    private Object conditionValue;
+
+    public JSTransactionOperation(
+        String type,
+        String reference,
+        JSONObject data,
+        Boolean merge,
+        String fieldPath,
+        Number amount,
+        Boolean conditionExists,
+        String conditionFieldPath,
+        Object conditionValue
+    ) {
+        this.type = type;
+        this.reference = reference;
+        this.data = data;
+        this.merge = merge;
+        this.fieldPath = fieldPath;
+        this.amount = amount;
+        this.conditionExists = conditionExists;
+        this.conditionFieldPath = conditionFieldPath;
+        this.conditionValue = conditionValue;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getReference() {
+        return this.reference;
+    }
+
+    public JSONObject getData() {
+        return this.data;
+    }
+
+    public Boolean getMerge() {
+        return this.merge;
+    }
+
+    public String getFieldPath() {
+        return this.fieldPath;
+    }
+
+    public Number getAmount() {
+        return this.amount;
+    }
+
+    public Boolean getConditionExists() {
+        return this.conditionExists;
+    }
+
+    public String getConditionFieldPath() {
+        return this.conditionFieldPath;
+    }
+
+    public Object getConditionValue() {
+        return this.conditionValue;
+    }
+
+    public boolean hasCondition() {
+        return this.conditionExists != null || this.conditionFieldPath != null;
+    }
+}
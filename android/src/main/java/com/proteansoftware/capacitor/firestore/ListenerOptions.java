@@ -0,0 +1,54 @@
+package com.proteansoftware.capacitor.firestore;
+
+import com.google.firebase.firestore.MetadataChanges;
+
+/**
+ * How a snapshot listener delivers its snapshots. With a throttle, snapshots are delivered
+ * at most once per throttleMs. With a debounce, they are delivered once no new snapshot has
+ * arrived for debounceMs. Either way only the latest snapshot is delivered, and a changes
+ * listener receives the changes merged since the previous delivery.
+ */
+public class ListenerOptions {
+
+    public static final ListenerOptions DEFAULT = new ListenerOptions(0, 0, false);
+
+    private long throttleMs;
+    private long debounceMs;
+    private boolean includeMetadataChanges;
+
+    public ListenerOptions(long throttleMs, long debounceMs, boolean includeMetadataChanges) {
+        this.throttleMs = Math.max(0, throttleMs);
+        this.debounceMs = Math.max(0, debounceMs);
+        this.includeMetadataChanges = includeMetadataChanges;
+    }
+
+    public long getThrottleMs() {
+        return this.throttleMs;
+    }
+
+    public long getDebounceMs() {
+        return this.debounceMs;
+    }
+
+    public boolean getIncludeMetadataChanges() {
+        return this.includeMetadataChanges;
+    }
+
+    public boolean isCoalescing() {
+        return this.throttleMs > 0 || this.debounceMs > 0;
+    }
+
+    public MetadataChanges getMetadataChanges() {
+        return this.includeMetadataChanges ? MetadataChanges.INCLUDE : MetadataChanges.EXCLUDE;
+    }
+
+    /**
+     * Returns the part of a subscription key that tells listeners with different options apart.
+     */
+    public String toKey() {
+        if (!this.isCoalescing() && !this.includeMetadataChanges) {
+            return "";
+        }
+        return "|throttle:" + this.throttleMs + "|debounce:" + this.debounceMs + "|metadata:" + this.includeMetadataChanges;
+    }
+}
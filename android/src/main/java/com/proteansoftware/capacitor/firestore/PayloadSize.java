@@ -0,0 +1,73 @@
+package com.proteansoftware.capacitor.firestore;
+
+import java.util.Iterator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Estimates the size of payloads as JSON text by walking them, without serializing them
+ * with toString. Strings are counted without escapes and decimals at a fixed width, so the
+ * estimate is close to, but not exactly, the length of the JSON text.
+ */
+public class PayloadSize {
+
+    /**
+     * The width counted for numbers that are not integers.
+     */
+    private static final int DECIMAL_LENGTH = 12;
+
+    private PayloadSize() {}
+
+    /**
+     * The size of the payload as it is sent to and from the WebView as UTF-16 text, so two
+     * bytes per character.
+     */
+    public static int utf16Bytes(JSONObject payload) {
+        return payload != null ? estimate(payload) * 2 : 0;
+    }
+
+    /**
+     * The estimated length of the value as JSON text.
+     */
+    public static int estimate(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return 4;
+        } else if (value instanceof String) {
+            return ((String) value).length() + 2;
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 4 : 5;
+        } else if (value instanceof Integer || value instanceof Long) {
+            return integerLength(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            return DECIMAL_LENGTH;
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            // The braces, and a colon, two quotes and a comma for each field.
+            int length = 2;
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                length += key.length() + 4 + estimate(object.opt(key));
+            }
+            return length;
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            int length = 2;
+            for (int x = 0; x < array.length(); x++) {
+                length += estimate(array.opt(x)) + 1;
+            }
+            return length;
+        }
+
+        return value.toString().length() + 2;
+    }
+
+    private static int integerLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        while (value <= -10 || value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+}
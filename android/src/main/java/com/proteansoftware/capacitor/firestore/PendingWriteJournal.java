@@ -0,0 +1,139 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the pending writes in a SQLite database, so writes queued by Firestore are still
+ * known after the app restarts. Rows are only removed once the write is acknowledged.
+ * <p>
+ * Ids are relative to the last write left by the previous run, which load reads: writes it
+ * returns have ids of 0 or less, so the tracker can number the writes of this run from 1
+ * before the journal is read. Not thread safe, use it from one thread.
+ */
+public class PendingWriteJournal extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "capacitor-firestore-pending-writes.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "pending_writes";
+
+    private long idOffset = 0;
+
+    public PendingWriteJournal(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(
+            "CREATE TABLE " +
+            TABLE +
+            " (id INTEGER PRIMARY KEY, path TEXT NOT NULL, type TEXT NOT NULL, bytes INTEGER NOT NULL, started_at INTEGER NOT NULL)"
+        );
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        this.onCreate(db);
+    }
+
+    /**
+     * Reads every write left in the journal, oldest first. Call it before any other method.
+     */
+    public List<PendingWriteTracker.PendingWrite> load() {
+        List<PendingWriteTracker.PendingWrite> writes = new ArrayList<>();
+        Cursor cursor = this.getReadableDatabase()
+            .query(TABLE, new String[] { "id", "path", "type", "bytes", "started_at" }, null, null, null, null, "id");
+        try {
+            while (cursor.moveToNext()) {
+                writes.add(
+                    new PendingWriteTracker.PendingWrite(
+                        cursor.getLong(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getInt(3),
+                        cursor.getLong(4),
+                        true
+                    )
+                );
+            }
+        } finally {
+            cursor.close();
+        }
+
+        this.idOffset = writes.isEmpty() ? 0 : writes.get(writes.size() - 1).getId();
+        for (int x = 0; x < writes.size(); x++) {
+            PendingWriteTracker.PendingWrite write = writes.get(x);
+            writes.set(
+                x,
+                new PendingWriteTracker.PendingWrite(
+                    write.getId() - this.idOffset,
+                    write.getPath(),
+                    write.getType(),
+                    write.getBytes(),
+                    write.getStartedAt(),
+                    true
+                )
+            );
+        }
+        return writes;
+    }
+
+    /**
+     * Stores the writes in one transaction.
+     */
+    public void insert(List<PendingWriteTracker.PendingWrite> writes) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (PendingWriteTracker.PendingWrite write : writes) {
+                ContentValues values = new ContentValues();
+                values.put("id", write.getId() + this.idOffset);
+                values.put("path", write.getPath());
+                values.put("type", write.getType());
+                values.put("bytes", write.getBytes());
+                values.put("started_at", write.getStartedAt());
+                db.insert(TABLE, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes the writes in one transaction.
+     */
+    public void delete(List<Long> ids) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (long id : ids) {
+                db.delete(TABLE, "id = ?", new String[] { String.valueOf(id + this.idOffset) });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes every write up to and including the id.
+     */
+    public void deleteUpTo(long id) {
+        this.getWritableDatabase().delete(TABLE, "id <= ?", new String[] { String.valueOf(id + this.idOffset) });
+    }
+
+    /**
+     * Removes every write, including those left by a previous run.
+     */
+    public void clear() {
+        this.getWritableDatabase().delete(TABLE, null, null);
+    }
+}
@@ -0,0 +1,362 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.os.SystemClock;
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+
+/**
+ * Tracks every write that has been sent to Firestore but not yet acknowledged, by
+ * document path. Safe to use from the plugin thread and from Task callbacks.
+ * <p>
+ * With a journal, the writes are also stored on disk so they are still known after the app
+ * restarts. Firestore replays its own write queue on restart, but without a Task for each
+ * write, so restored writes are only removed by reconcile once waitForPendingWrites completes.
+ * The journal is read and written off the plugin thread, with one transaction per call or batch.
+ */
+public class PendingWriteTracker {
+
+    public static class PendingWrite {
+
+        private final long id;
+        private final String path;
+        private final String type;
+        private final int bytes;
+        private final long startedAt;
+        private final boolean restored;
+
+        public PendingWrite(long id, String path, String type, int bytes, long startedAt, boolean restored) {
+            this.id = id;
+            this.path = path;
+            this.type = type;
+            this.bytes = bytes;
+            this.startedAt = startedAt;
+            this.restored = restored;
+        }
+
+        public long getId() {
+            return this.id;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public int getBytes() {
+            return this.bytes;
+        }
+
+        public long getStartedAt() {
+            return this.startedAt;
+        }
+
+        /**
+         * Whether the write was restored from the journal of a previous run.
+         */
+        public boolean isRestored() {
+            return this.restored;
+        }
+    }
+
+    /**
+     * Measures how fast the queued writes are acknowledged once the network comes back.
+     */
+    private static class Replay {
+
+        private final long startedAt = System.currentTimeMillis();
+        private final long startedAtElapsed = SystemClock.elapsedRealtime();
+        private final int backlog;
+        private final long backlogBytes;
+        private int writes = 0;
+        private long bytes = 0;
+        private long finishedAtElapsed = -1;
+        private boolean drained = false;
+
+        private Replay(int backlog, long backlogBytes) {
+            this.backlog = backlog;
+            this.backlogBytes = backlogBytes;
+        }
+
+        private JSObject toJSObject() {
+            long finishedAt = this.finishedAtElapsed >= 0 ? this.finishedAtElapsed : SystemClock.elapsedRealtime();
+            long durationMs = finishedAt - this.startedAtElapsed;
+            double seconds = durationMs / 1000.0;
+
+            JSObject result = new JSObject();
+            result.put("startedAt", this.startedAt);
+            result.put("durationMs", durationMs);
+            result.put("inProgress", this.finishedAtElapsed < 0);
+            result.put("drained", this.drained);
+            result.put("backlog", this.backlog);
+            result.put("backlogBytes", this.backlogBytes);
+            result.put("writes", this.writes);
+            result.put("bytes", this.bytes);
+            result.put("writesPerSecond", seconds > 0 ? this.writes / seconds : 0);
+            result.put("bytesPerSecond", seconds > 0 ? this.bytes / seconds : 0);
+            return result;
+        }
+    }
+
+    // Journal reads and writes are done in order, off the plugin thread. The thread is shared so a
+    // tracker created when the cache mode changes only reads the journal once its predecessor's
+    // updates are written.
+    private static final ExecutorService JOURNAL_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final PendingWriteJournal journal;
+    private final TaskCompletionSource<Void> restored = new TaskCompletionSource<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<Long, PendingWrite> writes = new ConcurrentHashMap<>();
+    private volatile boolean reconciled = false;
+    private Replay replay = null;
+    private Replay lastReplay = null;
+
+    public PendingWriteTracker() {
+        this(null, false);
+    }
+
+    /**
+     * @param journal stores the pending writes, or null to only keep them in memory
+     * @param persistent whether Firestore persists its own write queue. Only then are the writes
+     *                   stored in the journal, and the writes left by a previous run restored
+     *                   from it. Otherwise the writes left in the journal are dropped.
+     */
+    public PendingWriteTracker(PendingWriteJournal journal, boolean persistent) {
+        this.journal = persistent ? journal : null;
+
+        if (journal == null) {
+            this.restored.setResult(null);
+            return;
+        }
+
+        // The journal gives restored writes ids of 0 or less, so writes tracked before it is read
+        // still sort after them.
+        JOURNAL_EXECUTOR.execute(
+            () -> {
+                try {
+                    this.restore(journal, persistent);
+                } catch (RuntimeException e) {
+                    Log.e("CapacitorFirestore", "Failed to read the pending write journal", e);
+                } finally {
+                    this.restored.setResult(null);
+                }
+            }
+        );
+    }
+
+    private void restore(PendingWriteJournal journal, boolean persistent) {
+        if (!persistent) {
+            journal.clear();
+            return;
+        }
+
+        List<PendingWrite> restored = journal.load();
+        if (this.reconciled) {
+            // Restored writes are older than any reconcile, which already removed their rows.
+            return;
+        }
+
+        for (PendingWrite write : restored) {
+            this.writes.put(write.getId(), write);
+            this.bytes.addAndGet(write.getBytes());
+        }
+    }
+
+    /**
+     * Completes once the writes left in the journal by a previous run are restored or dropped.
+     */
+    public Task<Void> getRestored() {
+        return this.restored.getTask();
+    }
+
+    /**
+     * Records a write to the document path until the task completes, successfully or not.
+     *
+     * @param type the kind of write, such as set, update or delete
+     * @param bytes the size of the data written, 0 for a delete
+     */
+    public <T> void track(String path, String type, int bytes, Task<T> task, Executor executor) {
+        this.track(Collections.singletonList(this.newWrite(path, type, bytes)), task, executor);
+    }
+
+    /**
+     * Records the operations of a batch until the task committing them completes, successfully
+     * or not. They are added to and removed from the journal in one transaction each.
+     */
+    public <T> void trackBatch(List<JSBatchOperation> operations, Task<T> task, Executor executor) {
+        List<PendingWrite> tracked = new ArrayList<>(operations.size());
+        for (JSBatchOperation operation : operations) {
+            tracked.add(this.newWrite(operation.getReference(), operation.getType(), dataBytes(operation.getData())));
+        }
+        this.track(tracked, task, executor);
+    }
+
+    private PendingWrite newWrite(String path, String type, int bytes) {
+        return new PendingWrite(this.nextId.incrementAndGet(), path, type, bytes, System.currentTimeMillis(), false);
+    }
+
+    private <T> void track(List<PendingWrite> tracked, Task<T> task, Executor executor) {
+        for (PendingWrite write : tracked) {
+            this.writes.put(write.getId(), write);
+            this.bytes.addAndGet(write.getBytes());
+        }
+        this.writeJournal(() -> this.journal.insert(tracked));
+
+        task.addOnCompleteListener(
+            executor,
+            value -> {
+                List<Long> removed = new ArrayList<>(tracked.size());
+                for (PendingWrite write : tracked) {
+                    if (this.remove(write.getId())) {
+                        removed.add(write.getId());
+                    }
+                }
+
+                if (!removed.isEmpty()) {
+                    this.writeJournal(() -> this.journal.delete(removed));
+                }
+            }
+        );
+    }
+
+    /**
+     * The estimated size of the data written, as JSON text, for the pending write stats.
+     * Estimated by walking the data, as serializing every write only to measure it is costly.
+     */
+    public static int dataBytes(JSONObject data) {
+        return data != null ? PayloadSize.estimate(data) : 0;
+    }
+
+    /**
+     * The id of the last write tracked, to reconcile with once waitForPendingWrites completes.
+     */
+    public long getLastId() {
+        return this.nextId.get();
+    }
+
+    /**
+     * Removes every write up to and including the id. Called when waitForPendingWrites
+     * completes, as every write queued before it was started has been acknowledged then.
+     *
+     * @return the number of writes removed
+     */
+    public int reconcile(long lastId) {
+        this.reconciled = true;
+        int removed = 0;
+        for (Long id : this.writes.keySet()) {
+            if (id <= lastId && this.remove(id)) {
+                removed++;
+            }
+        }
+
+        this.writeJournal(() -> this.journal.deleteUpTo(lastId));
+        return removed;
+    }
+
+    private boolean remove(long id) {
+        PendingWrite write = this.writes.remove(id);
+        if (write == null) {
+            return false;
+        }
+
+        this.bytes.addAndGet(-write.getBytes());
+        this.recordAcknowledged(write);
+        return true;
+    }
+
+    /**
+     * Starts measuring a replay if writes are queued and none is being measured already.
+     * Called when the network becomes available.
+     */
+    public synchronized void startReplay() {
+        if (this.replay == null && !this.writes.isEmpty()) {
+            this.replay = new Replay(this.writes.size(), this.bytes.get());
+        }
+    }
+
+    /**
+     * Stops measuring the replay before the queue is drained. Called when the network is lost.
+     */
+    public synchronized void stopReplay() {
+        this.finishReplay(false);
+    }
+
+    private synchronized void recordAcknowledged(PendingWrite write) {
+        if (this.replay == null) {
+            return;
+        }
+
+        this.replay.writes++;
+        this.replay.bytes += write.getBytes();
+        if (this.writes.isEmpty()) {
+            this.finishReplay(true);
+        }
+    }
+
+    private void finishReplay(boolean drained) {
+        if (this.replay == null) {
+            return;
+        }
+
+        this.replay.finishedAtElapsed = SystemClock.elapsedRealtime();
+        this.replay.drained = drained;
+        this.lastReplay = this.replay;
+        this.replay = null;
+    }
+
+    /**
+     * The replay being measured, or else the last one, or null if there has not been one.
+     */
+    public synchronized JSObject getReplayStats() {
+        Replay replay = this.replay != null ? this.replay : this.lastReplay;
+        return replay != null ? replay.toJSObject() : null;
+    }
+
+    public int getCount() {
+        return this.writes.size();
+    }
+
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * The pending writes, oldest first.
+     */
+    public List<PendingWrite> getPendingWrites() {
+        List<PendingWrite> writes = new ArrayList<>(this.writes.values());
+        Collections.sort(writes, (a, b) -> Long.compare(a.getId(), b.getId()));
+        return writes;
+    }
+
+    private void writeJournal(Runnable write) {
+        if (this.journal == null) {
+            return;
+        }
+
+        JOURNAL_EXECUTOR.execute(
+            () -> {
+                try {
+                    write.run();
+                } catch (RuntimeException e) {
+                    Log.e("CapacitorFirestore", "Failed to update the pending write journal", e);
+                }
+            }
+        );
+    }
+}
@@ -0,0 +1,336 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.os.SystemClock;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.QuerySnapshot;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records call counts, per phase latency histograms, payload sizes and listener event
+ * counts for each plugin method. When disabled, start returns an operation that records
+ * nothing, so the instrumented code paths only pay for a method call.
+ */
+public class PluginMetrics {
+
+    /**
+     * Reading the call options and converting the data sent from the WebView.
+     */
+    public static final String PHASE_DECODE = "decode";
+
+    /**
+     * Converting the data into Firestore values and handing the request to Firestore.
+     */
+    public static final String PHASE_PREPARE = "prepare";
+
+    /**
+     * Waiting for the Firestore Task, or for a write to be committed by the backend.
+     */
+    public static final String PHASE_TASK = "task";
+
+    /**
+     * Converting the result into the payload sent to the WebView.
+     */
+    public static final String PHASE_CONVERT = "convert";
+
+    /**
+     * From the plugin method being called until the call is resolved.
+     */
+    public static final String PHASE_TOTAL = "total";
+
+    private static final String[] PHASES = { PHASE_DECODE, PHASE_PREPARE, PHASE_TASK, PHASE_CONVERT, PHASE_TOTAL };
+
+    /**
+     * Histograms count values in powers of two: bucket 0 counts 0, and bucket i counts values
+     * from 2^(i-1) up to 2^i - 1. The last bucket also counts every larger value.
+     */
+    private static final int BUCKETS = 32;
+
+    public static class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(value), BUCKETS - 1);
+            this.buckets.incrementAndGet(bucket);
+            this.count.incrementAndGet();
+            this.sum.addAndGet(value);
+
+            long current = this.max.get();
+            while (value > current && !this.max.compareAndSet(current, value)) {
+                current = this.max.get();
+            }
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        /**
+         * Estimates the percentile as the upper bound of the bucket it falls in.
+         */
+        private long percentile(long[] counts, long total, double percentile) {
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int x = 0; x < counts.length; x++) {
+                seen += counts[x];
+                if (seen >= rank) {
+                    return Math.min(x == 0 ? 0 : (1L << x) - 1, this.max.get());
+                }
+            }
+            return this.max.get();
+        }
+
+        public JSObject toJSObject() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            int last = -1;
+            for (int x = 0; x < BUCKETS; x++) {
+                counts[x] = this.buckets.get(x);
+                total += counts[x];
+                if (counts[x] > 0) {
+                    last = x;
+                }
+            }
+
+            JSArray buckets = new JSArray();
+            for (int x = 0; x <= last; x++) {
+                buckets.put(counts[x]);
+            }
+
+            JSObject result = new JSObject();
+            result.put("count", total);
+            result.put("sum", this.sum.get());
+            result.put("max", this.max.get());
+            result.put("mean", total > 0 ? (double) this.sum.get() / total : 0);
+            result.put("p50", total > 0 ? this.percentile(counts, total, 0.5) : 0);
+            result.put("p90", total > 0 ? this.percentile(counts, total, 0.9) : 0);
+            result.put("p99", total > 0 ? this.percentile(counts, total, 0.99) : 0);
+            result.put("buckets", buckets);
+            return result;
+        }
+    }
+
+    private static class MethodMetrics {
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final Map<String, Histogram> phases = new ConcurrentHashMap<>();
+        private final Histogram requestBytes = new Histogram();
+        private final Histogram responseBytes = new Histogram();
+        private final Histogram documents = new Histogram();
+        private final AtomicLong eventsReceived = new AtomicLong();
+        private final AtomicLong eventsDelivered = new AtomicLong();
+
+        private MethodMetrics() {
+            for (String phase : PHASES) {
+                this.phases.put(phase, new Histogram());
+            }
+        }
+
+        private JSObject toJSObject(double elapsedSeconds) {
+            JSObject phases = new JSObject();
+            for (String phase : PHASES) {
+                Histogram histogram = this.phases.get(phase);
+                if (histogram.getCount() > 0) {
+                    phases.put(phase, histogram.toJSObject());
+                }
+            }
+
+            JSObject result = new JSObject();
+            result.put("calls", this.calls.get());
+            result.put("errors", this.errors.get());
+            result.put("latencyUs", phases);
+            result.put("requestBytes", this.requestBytes.toJSObject());
+            result.put("responseBytes", this.responseBytes.toJSObject());
+            result.put("documents", this.documents.toJSObject());
+
+            if (this.eventsReceived.get() > 0) {
+                JSObject events = new JSObject();
+                events.put("received", this.eventsReceived.get());
+                events.put("delivered", this.eventsDelivered.get());
+                events.put("receivedPerSecond", elapsedSeconds > 0 ? this.eventsReceived.get() / elapsedSeconds : 0);
+                events.put("deliveredPerSecond", elapsedSeconds > 0 ? this.eventsDelivered.get() / elapsedSeconds : 0);
+                result.put("events", events);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Times the phases of a single plugin call. Each mark records the time since the
+     * previous mark, or since the call started, against the given phase.
+     */
+    public class Operation {
+
+        private final MethodMetrics method;
+        private final long startedAt;
+        private long markedAt;
+
+        private Operation(MethodMetrics method) {
+            this.method = method;
+            this.startedAt = System.nanoTime();
+            this.markedAt = this.startedAt;
+        }
+
+        public void mark(String phase) {
+            if (this.method == null) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            this.method.phases.get(phase).record((now - this.markedAt) / 1000);
+            this.markedAt = now;
+        }
+
+        /**
+         * Records the time until the task completes as the task phase, without delaying the
+         * call. Used for writes, which resolve before the backend commits them.
+         */
+        public void markOnComplete(Task<?> task, Executor executor) {
+            if (this.method == null) {
+                return;
+            }
+
+            long enqueuedAt = System.nanoTime();
+            task.addOnCompleteListener(
+                executor,
+                result -> {
+                    this.method.phases.get(PHASE_TASK).record((System.nanoTime() - enqueuedAt) / 1000);
+                    if (!result.isSuccessful()) {
+                        this.method.errors.incrementAndGet();
+                    }
+                }
+            );
+        }
+
+        /**
+         * Records the total latency, the size of the result and the number of documents in it.
+         *
+         * @param result the result the call is resolved with, or null if it has none
+         */
+        public void finish(JSObject result, int documents) {
+            if (this.method == null) {
+                return;
+            }
+
+            this.method.phases.get(PHASE_TOTAL).record((System.nanoTime() - this.startedAt) / 1000);
+            this.method.documents.record(documents);
+            this.method.responseBytes.record(PayloadSize.utf16Bytes(result));
+        }
+
+        public void fail() {
+            if (this.method == null) {
+                return;
+            }
+
+            this.method.errors.incrementAndGet();
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final Operation disabledOperation = new Operation(null);
+    private volatile long resetAt = System.currentTimeMillis();
+    private volatile long resetAtElapsed = SystemClock.elapsedRealtime();
+
+    public PluginMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Starts timing a call and records its request size.
+     *
+     * @param method the plugin method being called
+     * @param request the data of the call
+     */
+    public Operation start(String method, JSObject request) {
+        if (!this.enabled) {
+            return this.disabledOperation;
+        }
+
+        MethodMetrics metrics = this.getMethod(method);
+        metrics.calls.incrementAndGet();
+        metrics.requestBytes.record(PayloadSize.utf16Bytes(request));
+        return new Operation(metrics);
+    }
+
+    /**
+     * Records a snapshot received by a native listener, delivered or not.
+     */
+    public void recordEventReceived(String method, Object snapshot) {
+        if (!this.enabled) {
+            return;
+        }
+
+        MethodMetrics metrics = this.getMethod(method);
+        metrics.eventsReceived.incrementAndGet();
+        metrics.documents.record(snapshot instanceof QuerySnapshot ? ((QuerySnapshot) snapshot).size() : 1);
+    }
+
+    /**
+     * Records a snapshot converted and delivered to the subscribers of a listener.
+     *
+     * @param startedAt when the conversion started, from System.nanoTime
+     */
+    public void recordEventDelivered(String method, long startedAt, JSObject result) {
+        if (!this.enabled) {
+            return;
+        }
+
+        MethodMetrics metrics = this.getMethod(method);
+        metrics.eventsDelivered.incrementAndGet();
+        metrics.phases.get(PHASE_CONVERT).record((System.nanoTime() - startedAt) / 1000);
+        metrics.responseBytes.record(PayloadSize.utf16Bytes(result));
+    }
+
+    public void reset() {
+        this.methods.clear();
+        this.resetAt = System.currentTimeMillis();
+        this.resetAtElapsed = SystemClock.elapsedRealtime();
+    }
+
+    public JSObject toJSObject() {
+        double elapsedSeconds = (SystemClock.elapsedRealtime() - this.resetAtElapsed) / 1000.0;
+
+        JSObject methods = new JSObject();
+        for (Map.Entry<String, MethodMetrics> entry : this.methods.entrySet()) {
+            methods.put(entry.getKey(), entry.getValue().toJSObject(elapsedSeconds));
+        }
+
+        JSObject result = new JSObject();
+        result.put("enabled", this.enabled);
+        result.put("since", this.resetAt);
+        result.put("methods", methods);
+        return result;
+    }
+
+    private MethodMetrics getMethod(String method) {
+        MethodMetrics metrics = this.methods.get(method);
+        if (metrics == null) {
+            MethodMetrics created = new MethodMetrics();
+            metrics = this.methods.putIfAbsent(method, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,65 @@
+package com.proteansoftware.capacitor.firestore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds canonical cache keys for queries. Object keys are written in sorted order, so
+ * constraints that only differ in key order map to the same key.
+ */
+public class QueryKey {
+
+    private QueryKey() {}
+
+    public static String canonical(String collectionReference, JSONArray queryConstraints) throws JSONException {
+        StringBuilder builder = new StringBuilder(collectionReference);
+        builder.append('|');
+        if (queryConstraints != null) {
+            append(builder, queryConstraints);
+        }
+
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>(object.length());
+            Iterator<String> iterator = object.keys();
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+            Collections.sort(keys);
+
+            builder.append('{');
+            for (int x = 0; x < keys.size(); x++) {
+                if (x > 0) {
+                    builder.append(',');
+                }
+                builder.append(JSONObject.quote(keys.get(x))).append(':');
+                append(builder, object.get(keys.get(x)));
+            }
+            builder.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+
+            builder.append('[');
+            for (int x = 0; x < array.length(); x++) {
+                if (x > 0) {
+                    builder.append(',');
+                }
+                append(builder, array.get(x));
+            }
+            builder.append(']');
+        } else if (value instanceof String) {
+            builder.append(JSONObject.quote((String) value));
+        } else {
+            builder.append(value);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.os.SystemClock;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single native snapshot listener shared by every subscription with the same key.
+ * Each snapshot is converted once and resolved to all subscribed calls. When the
+ * options throttle or debounce delivery, snapshots received in between deliveries
+ * are coalesced and only the latest one is delivered.
+ */
+public class SharedSnapshotListener<T> {
+
+    public interface Converter<T> {
+        JSObject convert(T snapshot);
+    }
+
+    public interface ChangesConverter<T> {
+        /**
+         * @param previous the snapshot delivered before
+         * @param coalesced true when snapshots between previous and snapshot were not delivered
+         */
+        JSObject convert(T previous, T snapshot, boolean coalesced);
+    }
+
+    public interface Registrar<T> {
+        ListenerRegistration register(EventListener<T> listener) throws Exception;
+    }
+
+    private final String key;
+    private final Converter<T> fullConverter;
+    private final ChangesConverter<T> changesConverter;
+    private final ListenerOptions options;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, PluginCall> subscribers = new LinkedHashMap<>();
+    private ListenerRegistration registration = null;
+    private T lastSnapshot = null;
+    private JSObject lastResult = null;
+    private T pendingSnapshot = null;
+    private boolean coalesced = false;
+    private long lastDeliveredAt = 0;
+    private ScheduledFuture<?> scheduledDelivery = null;
+    private boolean closed = false;
+
+    /**
+     * @param fullConverter converts a snapshot into the full result
+     * @param changesConverter converts a snapshot into the changes since the previous snapshot,
+     *                         or null to always send the full result
+     * @param scheduler runs delayed deliveries, only used when the options coalesce snapshots
+     */
+    public SharedSnapshotListener(
+        String key,
+        Converter<T> fullConverter,
+        ChangesConverter<T> changesConverter,
+        ListenerOptions options,
+        ScheduledExecutorService scheduler
+    ) {
+        this.key = key;
+        this.fullConverter = fullConverter;
+        this.changesConverter = changesConverter;
+        this.options = options;
+        this.scheduler = scheduler;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public void register(Registrar<T> registrar) throws Exception {
+        ListenerRegistration registration = registrar.register(this::onEvent);
+
+        synchronized (this) {
+            this.registration = registration;
+            if (this.closed) {
+                registration.remove();
+            }
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Adds a subscriber. If a snapshot has already been received, the subscriber is
+     * resolved with the full result straight away. Returns false if the listener has
+     * already been removed, in which case a new listener must be created.
+     */
+    public synchronized boolean addSubscriber(PluginCall call) {
+        if (this.closed) {
+            return false;
+        }
+
+        this.subscribers.put(call.getCallbackId(), call);
+
+        if (this.lastSnapshot != null) {
+            if (this.lastResult == null) {
+                this.lastResult = this.fullConverter.convert(this.lastSnapshot);
+            }
+            call.resolve(this.lastResult);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a subscriber. When it was the last one the native listener is removed
+     * and true is returned.
+     */
+    public synchronized boolean removeSubscriber(String callbackId) {
+        this.subscribers.remove(callbackId);
+
+        if (!this.subscribers.isEmpty() || this.closed) {
+            return false;
+        }
+
+        this.remove();
+        return true;
+    }
+
+    /**
+     * Rejects every subscriber and closes the listener, used when registering the
+     * native listener failed.
+     */
+    public synchronized void fail(Exception error) {
+        for (PluginCall call : this.subscribers.values()) {
+            call.reject(error.getMessage(), error);
+        }
+
+        this.remove();
+    }
+
+    public synchronized void remove() {
+        this.closed = true;
+        this.subscribers.clear();
+        this.lastSnapshot = null;
+        this.lastResult = null;
+        this.pendingSnapshot = null;
+        this.cancelScheduledDelivery();
+
+        if (this.registration != null) {
+            this.registration.remove();
+        }
+    }
+
+    private synchronized void onEvent(T snapshot, FirebaseFirestoreException error) {
+        if (this.closed) {
+            return;
+        }
+
+        if (error != null) {
+            // Firestore stops a listener after an error, so later subscribers need a new one.
+            this.closed = true;
+            this.pendingSnapshot = null;
+            this.cancelScheduledDelivery();
+            for (PluginCall call : this.subscribers.values()) {
+                call.reject(error.getMessage(), error);
+            }
+            return;
+        }
+
+        // The first snapshot is always delivered straight away.
+        if (!this.options.isCoalescing() || this.lastSnapshot == null) {
+            this.deliver(snapshot, false);
+            return;
+        }
+
+        if (this.pendingSnapshot != null) {
+            this.coalesced = true;
+        }
+        this.pendingSnapshot = snapshot;
+
+        long delay;
+        if (this.options.getDebounceMs() > 0) {
+            this.cancelScheduledDelivery();
+            delay = this.options.getDebounceMs();
+        } else if (this.scheduledDelivery != null) {
+            return;
+        } else {
+            delay = this.lastDeliveredAt + this.options.getThrottleMs() - SystemClock.elapsedRealtime();
+        }
+
+        if (delay <= 0) {
+            this.deliverPending();
+        } else {
+            this.scheduledDelivery = this.scheduler.schedule(this::deliverPending, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void deliverPending() {
+        this.scheduledDelivery = null;
+        if (this.closed || this.pendingSnapshot == null) {
+            return;
+        }
+
+        T snapshot = this.pendingSnapshot;
+        boolean coalesced = this.coalesced;
+        this.pendingSnapshot = null;
+        this.coalesced = false;
+        this.deliver(snapshot, coalesced);
+    }
+
+    private void deliver(T snapshot, boolean coalesced) {
+        JSObject result;
+        if (this.changesConverter != null && this.lastSnapshot != null) {
+            result = this.changesConverter.convert(this.lastSnapshot, snapshot, coalesced);
+            this.lastResult = null;
+        } else {
+            result = this.fullConverter.convert(snapshot);
+            this.lastResult = result;
+        }
+
+        this.lastSnapshot = snapshot;
+        this.lastDeliveredAt = SystemClock.elapsedRealtime();
+
+        for (PluginCall call : this.subscribers.values()) {
+            call.resolve(result);
+        }
+    }
+
+    private void cancelScheduledDelivery() {
+        if (this.scheduledDelivery != null) {
+            this.scheduledDelivery.cancel(false);
+            this.scheduledDelivery = null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.proteansoftware.capacitor.firestore;
+
+import android.util.LruCache;
+import com.getcapacitor.PluginCall;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Thread-safe registry of snapshot listeners, keyed both by callback id and by the
+ * subscription key that identical subscriptions share. Removed callback ids are kept
+ * as a bounded set of tombstones so that removing a listener twice still succeeds.
+ */
+public class SnapshotListenerRegistry {
+
+    /**
+     * The number of removed callback ids remembered, least recently removed ids are dropped first.
+     */
+    private static final int MAX_TOMBSTONES = 1000;
+
+    private final ConcurrentHashMap<String, SharedSnapshotListener<?>> subscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SharedSnapshotListener<?>> listeners = new ConcurrentHashMap<>();
+    private final LruCache<String, Boolean> tombstones = new LruCache<>(MAX_TOMBSTONES);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Subscribes the call to the listener for the key, registering a new native listener only
+     * when no active listener with the same key exists. The key must include the options.
+     */
+    public <T> void subscribe(
+        PluginCall call,
+        String key,
+        SharedSnapshotListener.Converter<T> fullConverter,
+        SharedSnapshotListener.ChangesConverter<T> changesConverter,
+        ListenerOptions options,
+        SharedSnapshotListener.Registrar<T> registrar
+    ) {
+        String callbackId = call.getCallbackId();
+
+        while (true) {
+            SharedSnapshotListener<T> existing = (SharedSnapshotListener<T>) this.listeners.get(key);
+
+            if (existing != null && !existing.isClosed()) {
+                if (existing.addSubscriber(call)) {
+                    this.subscriptions.put(callbackId, existing);
+                    return;
+                }
+
+                this.listeners.remove(key, existing);
+                continue;
+            }
+
+            SharedSnapshotListener<T> created = new SharedSnapshotListener<>(key, fullConverter, changesConverter, options, this.scheduler);
+            boolean stored = existing == null
+                ? this.listeners.putIfAbsent(key, created) == null
+                : this.listeners.replace(key, existing, created);
+
+            if (!stored) {
+                continue;
+            }
+
+            created.addSubscriber(call);
+            this.subscriptions.put(callbackId, created);
+
+            try {
+                created.register(registrar);
+            } catch (Exception e) {
+                e.printStackTrace();
+                this.listeners.remove(key, created);
+                created.fail(e);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Removes the subscription for the callback id. Returns false if the callback id was
+     * never subscribed, true if it was removed now or had already been removed.
+     */
+    public boolean remove(String callbackId) {
+        Boolean removedBefore = this.tombstones.put(callbackId, Boolean.TRUE);
+        SharedSnapshotListener<?> listener = this.subscriptions.remove(callbackId);
+
+        if (listener == null) {
+            if (removedBefore == null) {
+                this.tombstones.remove(callbackId);
+                return false;
+            }
+            return true;
+        }
+
+        if (listener.removeSubscriber(callbackId)) {
+            this.listeners.remove(listener.getKey(), listener);
+        }
+
+        return true;
+    }
+
+    public void clear() {
+        for (Map.Entry<String, SharedSnapshotListener<?>> entry : this.listeners.entrySet()) {
+            if (this.listeners.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().remove();
+            }
+        }
+
+        for (String callbackId : this.subscriptions.keySet()) {
+            if (this.subscriptions.remove(callbackId) != null) {
+                this.tombstones.put(callbackId, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * Removes every listener and stops the thread that throttles and debounces their events.
+     * The registry must not be used afterwards.
+     */
+    public void close() {
+        this.clear();
+        this.scheduler.shutdownNow();
+    }
+}
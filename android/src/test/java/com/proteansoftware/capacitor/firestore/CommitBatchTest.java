@@ -0,0 +1,93 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.getcapacitor.JSObject;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CommitBatchTest {
+
+    private FirebaseFirestore db;
+    private WriteBatch batch;
+    private CapacitorFirestore implementation;
+
+    @Before
+    public void initialize() {
+        this.db = mock(FirebaseFirestore.class);
+        this.batch = mock(WriteBatch.class);
+        when(this.db.batch()).thenReturn(this.batch);
+        when(this.db.document(anyString())).thenReturn(mock(DocumentReference.class));
+        this.implementation = new CapacitorFirestore(this.db);
+    }
+
+    @Test
+    public void commitsOneBatchPerChunk() throws Exception {
+        List<JSBatchOperation> operations = this.createOperations(CapacitorFirestore.MAX_BATCH_OPERATIONS + 1);
+
+        assertEquals(2, this.implementation.commitBatch(operations).size());
+        verify(this.batch, times(2)).commit();
+        verify(this.batch, times(CapacitorFirestore.MAX_BATCH_OPERATIONS + 1)).set(any(DocumentReference.class), anyMap());
+    }
+
+    @Test
+    public void missingDataInALaterChunkCommitsNothing() {
+        List<JSBatchOperation> operations = this.createOperations(CapacitorFirestore.MAX_BATCH_OPERATIONS + 100);
+        operations.set(CapacitorFirestore.MAX_BATCH_OPERATIONS + 50, new JSBatchOperation("update", "items/bad", null, false));
+
+        Exception error = assertThrows(Exception.class, () -> this.implementation.commitBatch(operations));
+        assertEquals("batch operation data must not be null: update", error.getMessage());
+        verify(this.batch, never()).commit();
+    }
+
+    @Test
+    public void unknownTypeInALaterChunkCommitsNothing() {
+        List<JSBatchOperation> operations = this.createOperations(CapacitorFirestore.MAX_BATCH_OPERATIONS + 100);
+        operations.set(CapacitorFirestore.MAX_BATCH_OPERATIONS + 50, new JSBatchOperation("upsert", "items/bad", new JSObject(), false));
+
+        Exception error = assertThrows(Exception.class, () -> this.implementation.commitBatch(operations));
+        assertEquals("batch operation not support: upsert", error.getMessage());
+        verify(this.batch, never()).commit();
+    }
+
+    @Test
+    public void invalidDataInALaterChunkCommitsNothing() {
+        List<JSBatchOperation> operations = this.createOperations(CapacitorFirestore.MAX_BATCH_OPERATIONS + 100);
+        JSObject timestamp = new JSObject();
+        timestamp.put("specialType", "Timestamp");
+        timestamp.put("seconds", "not a number");
+        JSObject data = new JSObject();
+        data.put("createdAt", timestamp);
+        operations.set(CapacitorFirestore.MAX_BATCH_OPERATIONS + 50, new JSBatchOperation("set", "items/bad", data, false));
+
+        assertThrows(Exception.class, () -> this.implementation.commitBatch(operations));
+        verify(this.batch, never()).commit();
+    }
+
+    private List<JSBatchOperation> createOperations(int count) {
+        List<JSBatchOperation> operations = new ArrayList<>(count);
+        for (int x = 0; x < count; x++) {
+            JSObject data = new JSObject();
+            data.put("index", x);
+            operations.add(new JSBatchOperation("set", "items/item" + x, data, false));
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,115 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.getcapacitor.JSObject;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class DocumentCacheTest {
+
+    private static final long TTL = 60000;
+
+    @Test
+    public void returnsTheCachedPayload() throws JSONException {
+        DocumentCache cache = new DocumentCache(1000, TTL);
+        JSObject payload = this.payload(10);
+
+        cache.put("items/a", payload);
+
+        assertSame(payload, cache.get("items/a"));
+        assertNull(cache.get("items/b"));
+        assertEquals(1, cache.getStats().getLong("hits"));
+        assertEquals(1, cache.getStats().getLong("misses"));
+    }
+
+    @Test
+    public void expiredEntriesAreMisses() throws Exception {
+        DocumentCache cache = new DocumentCache(1000, 1);
+
+        cache.put("items/a", this.payload(10));
+        Thread.sleep(10);
+
+        assertNull(cache.get("items/a"));
+        assertEquals(1, cache.getStats().getLong("misses"));
+        assertEquals(0, cache.getStats().getInt("entries"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntryOverTheBudget() throws JSONException {
+        // Each payload is estimated at 100 bytes, so the budget holds two of them.
+        DocumentCache cache = new DocumentCache(250, TTL);
+        cache.put("items/a", this.payload(37));
+        cache.put("items/b", this.payload(37));
+        cache.get("items/a");
+
+        cache.put("items/c", this.payload(37));
+
+        assertNull(cache.get("items/b"));
+        assertEquals(37, cache.get("items/a").getString("value").length());
+        assertEquals(37, cache.get("items/c").getString("value").length());
+        assertEquals(1, cache.getStats().getLong("evictions"));
+        assertEquals(200, cache.getStats().getInt("sizeBytes"));
+    }
+
+    @Test
+    public void payloadsLargerThanTheBudgetAreNotCached() throws JSONException {
+        DocumentCache cache = new DocumentCache(250, TTL);
+        cache.put("items/a", this.payload(10));
+
+        cache.put("items/a", this.payload(200));
+
+        // The smaller payload cached before is stale and must not be returned either.
+        assertNull(cache.get("items/a"));
+        assertEquals(0, cache.getStats().getInt("entries"));
+        assertEquals(0, cache.getStats().getLong("evictions"));
+    }
+
+    @Test
+    public void invalidateAndClearAreNotEvictions() throws JSONException {
+        DocumentCache cache = new DocumentCache(1000, TTL);
+        cache.put("items/a", this.payload(10));
+        cache.put("items/b", this.payload(10));
+        cache.put("items/c", this.payload(10));
+
+        cache.invalidate("items/a");
+        cache.clear();
+
+        assertNull(cache.get("items/b"));
+        assertEquals(0, cache.getStats().getInt("entries"));
+        assertEquals(0, cache.getStats().getInt("sizeBytes"));
+        assertEquals(0, cache.getStats().getLong("evictions"));
+    }
+
+    @Test
+    public void zeroBudgetDisablesTheCache() throws JSONException {
+        DocumentCache cache = new DocumentCache(0, TTL);
+
+        cache.put("items/a", this.payload(10));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("items/a"));
+        assertEquals(0, cache.getStats().getLong("misses"));
+        assertEquals(0, cache.getStats().getInt("entries"));
+    }
+
+    /**
+     * A payload estimated at 2 * (length + 13) bytes.
+     */
+    private JSObject payload(int length) {
+        StringBuilder value = new StringBuilder(length);
+        for (int x = 0; x < length; x++) {
+            value.append('x');
+        }
+
+        JSObject payload = new JSObject();
+        payload.put("value", value.toString());
+        return payload;
+    }
+}
@@ -0,0 +1,185 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.GeoPoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FirestoreValueCodecTest {
+
+    private static class Unknown {
+
+        @Override
+        public String toString() {
+            return "unknown value";
+        }
+    }
+
+    private FirebaseFirestore db;
+    private DocumentReference reference;
+    private FirestoreValueCodec codec;
+
+    @Before
+    public void initialize() {
+        this.db = mock(FirebaseFirestore.class);
+        this.reference = mock(DocumentReference.class);
+        when(this.reference.getPath()).thenReturn("items/item1");
+        when(this.db.document("items/item1")).thenReturn(this.reference);
+        this.codec = new FirestoreValueCodec(this.db);
+    }
+
+    @Test
+    public void readsSpecialTypes() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("createdAt", new Timestamp(1700000000, 500));
+        data.put("location", new GeoPoint(51.5, -0.1));
+        data.put("owner", this.reference);
+        data.put("thumbnail", Blob.fromBytes(new byte[] { 1, 2, 3 }));
+
+        JSObject result = this.codec.readMap(data);
+
+        JSObject createdAt = result.getJSObject("createdAt");
+        assertEquals("Timestamp", createdAt.getString("specialType"));
+        assertEquals(1700000000L, createdAt.getLong("seconds"));
+        assertEquals(500, createdAt.getInt("nanoseconds"));
+
+        JSObject location = result.getJSObject("location");
+        assertEquals("GeoPoint", location.getString("specialType"));
+        assertEquals(51.5, location.getDouble("latitude"), 0);
+        assertEquals(-0.1, location.getDouble("longitude"), 0);
+
+        JSObject owner = result.getJSObject("owner");
+        assertEquals("DocumentReference", owner.getString("specialType"));
+        assertEquals("items/item1", owner.getString("path"));
+
+        JSObject thumbnail = result.getJSObject("thumbnail");
+        assertEquals("Blob", thumbnail.getString("specialType"));
+        assertEquals("AQID", thumbnail.getString("base64"));
+    }
+
+    @Test
+    public void readsSpecialTypesInsideListsAndMaps() throws Exception {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("at", new Timestamp(1, 0));
+        List<Object> list = new ArrayList<>(Arrays.asList("a", 1L, nested));
+
+        JSArray result = (JSArray) this.codec.read(list);
+
+        assertEquals("a", result.get(0));
+        assertEquals(1L, result.get(1));
+        assertEquals("Timestamp", ((JSObject) result.get(2)).getJSObject("at").getString("specialType"));
+    }
+
+    @Test
+    public void readsNaNAndInfinityAsSpecialDoubles() throws Exception {
+        assertEquals(1.5, this.codec.read(1.5));
+
+        JSObject nan = (JSObject) this.codec.read(Double.NaN);
+        assertEquals("Double", nan.getString("specialType"));
+        assertEquals("NaN", nan.getString("value"));
+
+        assertEquals("Infinity", ((JSObject) this.codec.read(Double.POSITIVE_INFINITY)).getString("value"));
+        assertEquals("-Infinity", ((JSObject) this.codec.read(Double.NEGATIVE_INFINITY)).getString("value"));
+    }
+
+    @Test
+    public void readsNullAsJSONNull() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("deletedAt", null);
+
+        JSObject result = this.codec.readMap(data);
+
+        assertSame(JSONObject.NULL, this.codec.read(null));
+        assertTrue(result.has("deletedAt"));
+        assertSame(JSONObject.NULL, result.opt("deletedAt"));
+    }
+
+    @Test
+    public void readsUnknownClassesAsTheirString() {
+        assertEquals("unknown value", this.codec.read(new Unknown()));
+    }
+
+    @Test
+    public void writesJSONNullAsNull() throws Exception {
+        JSObject data = new JSObject();
+        data.put("deletedAt", JSONObject.NULL);
+
+        Map<String, Object> result = this.codec.writeData(data);
+
+        assertNull(this.codec.write(JSONObject.NULL));
+        assertTrue(result.containsKey("deletedAt"));
+        assertNull(result.get("deletedAt"));
+    }
+
+    @Test
+    public void writesTheSpecialTypesItReads() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("createdAt", new Timestamp(1700000000, 500));
+        data.put("location", new GeoPoint(51.5, -0.1));
+        data.put("owner", this.reference);
+        data.put("thumbnail", Blob.fromBytes(new byte[] { 1, 2, 3 }));
+        data.put("ratio", Double.NaN);
+
+        Map<String, Object> result = this.codec.writeData(this.codec.readMap(data));
+
+        assertEquals(new Timestamp(1700000000, 500), result.get("createdAt"));
+        assertEquals(new GeoPoint(51.5, -0.1), result.get("location"));
+        assertSame(this.reference, result.get("owner"));
+        assertEquals(Blob.fromBytes(new byte[] { 1, 2, 3 }), result.get("thumbnail"));
+        assertTrue(((Double) result.get("ratio")).isNaN());
+    }
+
+    @Test
+    public void writesFieldValueSentinels() throws Exception {
+        JSObject serverTimestamp = new JSObject();
+        serverTimestamp.put("specialType", "ServerTimestamp");
+        JSObject deleteField = new JSObject();
+        deleteField.put("specialType", "DeleteField");
+
+        assertSame(FieldValue.serverTimestamp(), this.codec.write(serverTimestamp));
+        assertSame(FieldValue.delete(), this.codec.write(deleteField));
+    }
+
+    @Test
+    public void unknownSpecialTypesAreRejected() {
+        JSObject value = new JSObject();
+        value.put("specialType", "Decimal");
+
+        Exception error = assertThrows(Exception.class, () -> this.codec.write(value));
+        assertEquals("Unhandled specialType:Decimal", error.getMessage());
+    }
+
+    @Test
+    public void invalidSpecialTypeFieldsAreRejected() {
+        JSObject value = new JSObject();
+        value.put("specialType", "Timestamp");
+        value.put("seconds", "soon");
+        value.put("nanoseconds", 0);
+
+        Exception error = assertThrows(Exception.class, () -> this.codec.write(value));
+        assertEquals("seconds must be a number: soon", error.getMessage());
+    }
+}
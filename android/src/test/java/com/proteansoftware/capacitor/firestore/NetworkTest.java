@@ -0,0 +1,40 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class NetworkTest {
+
+    private FirebaseFirestore db;
+    private CapacitorFirestore implementation;
+
+    @Before
+    public void initialize() {
+        this.db = mock(FirebaseFirestore.class);
+        this.implementation = new CapacitorFirestore(this.db);
+    }
+
+    @Test
+    public void enableNetwork() {
+        this.implementation.enableNetwork();
+
+        verify(this.db).enableNetwork();
+        verify(this.db, never()).disableNetwork();
+    }
+
+    @Test
+    public void disableNetwork() {
+        this.implementation.disableNetwork();
+
+        verify(this.db).disableNetwork();
+        verify(this.db, never()).enableNetwork();
+    }
+}
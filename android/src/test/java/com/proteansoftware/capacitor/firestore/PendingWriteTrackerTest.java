@@ -0,0 +1,212 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class PendingWriteTrackerTest {
+
+    private PendingWriteTracker tracker;
+
+    @Before
+    public void initialize() {
+        this.tracker = new PendingWriteTracker();
+    }
+
+    @Test
+    public void tracksWritesUntilTheyComplete() {
+        TaskCompletionSource<Void> first = this.track("items/a", "set", 100);
+        TaskCompletionSource<Void> second = this.track("items/b", "delete", 0);
+
+        assertEquals(2, this.tracker.getCount());
+        assertEquals(100, this.tracker.getBytes());
+
+        first.setResult(null);
+
+        assertEquals(1, this.tracker.getCount());
+        assertEquals(0, this.tracker.getBytes());
+        assertEquals("items/b", this.tracker.getPendingWrites().get(0).getPath());
+
+        second.setException(new Exception("rejected"));
+
+        // Failed writes are no longer pending either.
+        assertEquals(0, this.tracker.getCount());
+    }
+
+    @Test
+    public void pendingWritesAreOldestFirst() {
+        for (int x = 0; x < 20; x++) {
+            this.track("items/item" + x, "update", x);
+        }
+
+        List<PendingWriteTracker.PendingWrite> writes = this.tracker.getPendingWrites();
+
+        assertEquals(20, writes.size());
+        for (int x = 0; x < 20; x++) {
+            assertEquals("items/item" + x, writes.get(x).getPath());
+            assertEquals("update", writes.get(x).getType());
+            assertFalse(writes.get(x).isRestored());
+        }
+    }
+
+    @Test
+    public void tracksBatchOperationsUntilTheCommitCompletes() throws JSONException {
+        TaskCompletionSource<Void> commit = new TaskCompletionSource<>();
+        List<JSBatchOperation> operations = Arrays.asList(
+            new JSBatchOperation("set", "items/a", new JSONObject("{\"name\":\"a\"}"), false),
+            new JSBatchOperation("delete", "items/b", null, false)
+        );
+
+        this.tracker.trackBatch(operations, commit.getTask(), Runnable::run);
+
+        List<PendingWriteTracker.PendingWrite> writes = this.tracker.getPendingWrites();
+        assertEquals(2, writes.size());
+        assertEquals("items/a", writes.get(0).getPath());
+        assertEquals("delete", writes.get(1).getType());
+        assertEquals(PendingWriteTracker.dataBytes(operations.get(0).getData()), this.tracker.getBytes());
+
+        commit.setResult(null);
+
+        assertEquals(0, this.tracker.getCount());
+        assertEquals(0, this.tracker.getBytes());
+    }
+
+    @Test
+    public void journaledWritesAreRestoredBeforeNewWrites() throws InterruptedException {
+        AwaitRestored(new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), false));
+        this.tracker = new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), true);
+        this.track("items/a", "set", 10);
+        TaskCompletionSource<Void> acknowledged = this.track("items/b", "set", 20);
+        this.track("items/c", "set", 30);
+        acknowledged.setResult(null);
+
+        // The next run reads the journal after the previous tracker's updates are written.
+        this.tracker = new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), true);
+        this.track("items/d", "set", 40);
+        AwaitRestored(this.tracker);
+
+        List<PendingWriteTracker.PendingWrite> writes = this.tracker.getPendingWrites();
+        assertEquals(3, writes.size());
+        assertEquals("items/a", writes.get(0).getPath());
+        assertTrue(writes.get(0).isRestored());
+        assertEquals("items/c", writes.get(1).getPath());
+        assertTrue(writes.get(1).isRestored());
+        assertEquals("items/d", writes.get(2).getPath());
+        assertFalse(writes.get(2).isRestored());
+        assertEquals(80, this.tracker.getBytes());
+
+        assertEquals(3, this.tracker.reconcile(this.tracker.getLastId()));
+        this.tracker = new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), true);
+        AwaitRestored(this.tracker);
+
+        assertEquals(0, this.tracker.getCount());
+    }
+
+    @Test
+    public void journalIsDroppedWithoutAPersistentCache() throws InterruptedException {
+        this.tracker = new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), true);
+        this.track("items/a", "set", 10);
+
+        AwaitRestored(new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), false));
+        this.tracker = new PendingWriteTracker(new PendingWriteJournal(RuntimeEnvironment.getApplication()), true);
+        AwaitRestored(this.tracker);
+
+        assertEquals(0, this.tracker.getCount());
+    }
+
+    @Test
+    public void reconcileRemovesWritesUpToTheId() {
+        this.track("items/a", "set", 10);
+        this.track("items/b", "set", 20);
+        long lastId = this.tracker.getLastId();
+        this.track("items/c", "set", 30);
+
+        assertEquals(2, this.tracker.reconcile(lastId));
+        assertEquals(1, this.tracker.getCount());
+        assertEquals(30, this.tracker.getBytes());
+        assertEquals("items/c", this.tracker.getPendingWrites().get(0).getPath());
+    }
+
+    @Test
+    public void writesCompletedAfterReconcileAreNotCountedTwice() {
+        TaskCompletionSource<Void> write = this.track("items/a", "set", 10);
+
+        assertEquals(1, this.tracker.reconcile(this.tracker.getLastId()));
+        write.setResult(null);
+
+        assertEquals(0, this.tracker.getCount());
+        assertEquals(0, this.tracker.getBytes());
+    }
+
+    @Test
+    public void replayIsMeasuredUntilDrained() throws JSONException {
+        TaskCompletionSource<Void> first = this.track("items/a", "set", 10);
+        TaskCompletionSource<Void> second = this.track("items/b", "set", 20);
+
+        assertNull(this.tracker.getReplayStats());
+        this.tracker.startReplay();
+        first.setResult(null);
+
+        JSObject inProgress = this.tracker.getReplayStats();
+        assertTrue(inProgress.getBoolean("inProgress"));
+        assertEquals(2, inProgress.getInt("backlog"));
+        assertEquals(30, inProgress.getLong("backlogBytes"));
+        assertEquals(1, inProgress.getInt("writes"));
+
+        second.setResult(null);
+
+        JSObject drained = this.tracker.getReplayStats();
+        assertFalse(drained.getBoolean("inProgress"));
+        assertTrue(drained.getBoolean("drained"));
+        assertEquals(2, drained.getInt("writes"));
+        assertEquals(30, drained.getLong("bytes"));
+    }
+
+    @Test
+    public void replayStoppedBeforeDrainingIsNotDrained() throws JSONException {
+        this.track("items/a", "set", 10);
+
+        this.tracker.startReplay();
+        this.tracker.stopReplay();
+
+        JSObject stopped = this.tracker.getReplayStats();
+        assertFalse(stopped.getBoolean("inProgress"));
+        assertFalse(stopped.getBoolean("drained"));
+        assertEquals(0, stopped.getInt("writes"));
+    }
+
+    @Test
+    public void replayIsNotStartedWithoutWrites() {
+        this.tracker.startReplay();
+
+        assertNull(this.tracker.getReplayStats());
+    }
+
+    private static void AwaitRestored(PendingWriteTracker tracker) throws InterruptedException {
+        CountDownLatch restored = new CountDownLatch(1);
+        tracker.getRestored().addOnCompleteListener(Runnable::run, value -> restored.countDown());
+        assertTrue(restored.await(5, TimeUnit.SECONDS));
+    }
+
+    private TaskCompletionSource<Void> track(String path, String type, int bytes) {
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        this.tracker.track(path, type, bytes, source.getTask(), Runnable::run);
+        return source;
+    }
+}
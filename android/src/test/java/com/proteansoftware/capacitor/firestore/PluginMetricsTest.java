@@ -0,0 +1,126 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PluginMetricsTest {
+
+    @Test
+    public void histogramCountsValuesInPowerOfTwoBuckets() throws JSONException {
+        PluginMetrics.Histogram histogram = new PluginMetrics.Histogram();
+        for (long value : new long[] { 0, 1, 2, 3, 4, 7, 8 }) {
+            histogram.record(value);
+        }
+
+        JSONArray buckets = histogram.toJSObject().getJSONArray("buckets");
+
+        // 0, then 1, then 2 to 3, then 4 to 7, then 8 to 15.
+        assertEquals(5, buckets.length());
+        assertEquals(1, buckets.getLong(0));
+        assertEquals(1, buckets.getLong(1));
+        assertEquals(2, buckets.getLong(2));
+        assertEquals(2, buckets.getLong(3));
+        assertEquals(1, buckets.getLong(4));
+    }
+
+    @Test
+    public void histogramClampsNegativeAndHugeValues() throws JSONException {
+        PluginMetrics.Histogram histogram = new PluginMetrics.Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        JSObject result = histogram.toJSObject();
+        JSONArray buckets = result.getJSONArray("buckets");
+
+        assertEquals(32, buckets.length());
+        assertEquals(1, buckets.getLong(0));
+        assertEquals(1, buckets.getLong(31));
+        assertEquals(Long.MAX_VALUE / 2, result.getLong("max"));
+    }
+
+    @Test
+    public void histogramPercentilesAreBucketUpperBoundsCappedAtTheMax() throws JSONException {
+        PluginMetrics.Histogram histogram = new PluginMetrics.Histogram();
+        for (long value : new long[] { 1, 2, 3, 100 }) {
+            histogram.record(value);
+        }
+
+        JSObject result = histogram.toJSObject();
+
+        assertEquals(4, result.getLong("count"));
+        assertEquals(106, result.getLong("sum"));
+        assertEquals(26.5, result.getDouble("mean"), 0);
+        assertEquals(3, result.getLong("p50"));
+        assertEquals(100, result.getLong("p90"));
+        assertEquals(100, result.getLong("p99"));
+    }
+
+    @Test
+    public void emptyHistogram() throws JSONException {
+        JSObject result = new PluginMetrics.Histogram().toJSObject();
+
+        assertEquals(0, result.getLong("count"));
+        assertEquals(0, result.getLong("p50"));
+        assertEquals(0, result.getJSONArray("buckets").length());
+    }
+
+    @Test
+    public void recordsCallsAndPhases() throws JSONException {
+        PluginMetrics metrics = new PluginMetrics(true);
+        JSObject request = new JSObject();
+        request.put("reference", "items/a");
+
+        PluginMetrics.Operation operation = metrics.start("getDocument", request);
+        operation.mark(PluginMetrics.PHASE_DECODE);
+        operation.mark(PluginMetrics.PHASE_TASK);
+        operation.finish(new JSObject(), 1);
+        metrics.start("getDocument", request).fail();
+
+        JSONObject method = metrics.toJSObject().getJSONObject("methods").getJSONObject("getDocument");
+        JSONObject latency = method.getJSONObject("latencyUs");
+
+        assertEquals(2, method.getLong("calls"));
+        assertEquals(1, method.getLong("errors"));
+        assertEquals(2, method.getJSONObject("requestBytes").getLong("count"));
+        assertEquals(PayloadSize.utf16Bytes(request), method.getJSONObject("requestBytes").getLong("max"));
+        assertEquals(1, latency.getJSONObject(PluginMetrics.PHASE_DECODE).getLong("count"));
+        assertEquals(1, latency.getJSONObject(PluginMetrics.PHASE_TOTAL).getLong("count"));
+        // Phases that were never marked are left out.
+        assertFalse(latency.has(PluginMetrics.PHASE_PREPARE));
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() throws JSONException {
+        PluginMetrics metrics = new PluginMetrics(false);
+
+        PluginMetrics.Operation operation = metrics.start("getDocument", new JSObject());
+        operation.mark(PluginMetrics.PHASE_DECODE);
+        operation.finish(new JSObject(), 1);
+        metrics.recordEventReceived("addDocumentSnapshotListener", null);
+
+        JSObject result = metrics.toJSObject();
+        assertFalse(result.getBoolean("enabled"));
+        assertEquals(0, result.getJSONObject("methods").length());
+    }
+
+    @Test
+    public void resetClearsTheMethods() throws JSONException {
+        PluginMetrics metrics = new PluginMetrics(true);
+        metrics.start("getDocument", new JSObject()).finish(null, 0);
+
+        metrics.reset();
+
+        assertTrue(metrics.isEnabled());
+        assertEquals(0, metrics.toJSObject().getJSONObject("methods").length());
+    }
+}
@@ -0,0 +1,69 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class QueryKeyTest {
+
+    @Test
+    public void keyOrderDoesNotMatter() throws JSONException {
+        String first = QueryKey.canonical(
+            "items",
+            new JSONArray("[{\"type\":\"where\",\"fieldPath\":\"status\",\"opStr\":\"==\",\"value\":{\"b\":1,\"a\":2}}]")
+        );
+        String second = QueryKey.canonical(
+            "items",
+            new JSONArray("[{\"value\":{\"a\":2,\"b\":1},\"opStr\":\"==\",\"fieldPath\":\"status\",\"type\":\"where\"}]")
+        );
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void constraintOrderMatters() throws JSONException {
+        JSONArray limit = new JSONArray("[{\"type\":\"limit\",\"limit\":1}]");
+        JSONArray orderBy = new JSONArray("[{\"type\":\"orderBy\",\"fieldPath\":\"a\"}]");
+
+        String first = QueryKey.canonical("items", new JSONArray().put(limit.get(0)).put(orderBy.get(0)));
+        String second = QueryKey.canonical("items", new JSONArray().put(orderBy.get(0)).put(limit.get(0)));
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void valuesAreDistinguishedByType() throws JSONException {
+        String number = QueryKey.canonical("items", new JSONArray("[{\"value\":1}]"));
+        String string = QueryKey.canonical("items", new JSONArray("[{\"value\":\"1\"}]"));
+
+        assertNotEquals(number, string);
+    }
+
+    @Test
+    public void stringsAreQuoted() throws JSONException {
+        // Without quoting, a key and value containing the separators could match another query.
+        String first = QueryKey.canonical("items", new JSONArray("[{\"a\":\"b\\\",\\\"c\\\":\\\"d\"}]"));
+        String second = QueryKey.canonical("items", new JSONArray("[{\"a\":\"b\",\"c\":\"d\"}]"));
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void collectionIsPartOfTheKey() throws JSONException {
+        JSONArray constraints = new JSONArray("[{\"type\":\"limit\",\"limit\":1}]");
+
+        assertNotEquals(QueryKey.canonical("items", constraints), QueryKey.canonical("users", constraints));
+    }
+
+    @Test
+    public void missingConstraints() throws JSONException {
+        assertEquals("items|", QueryKey.canonical("items", null));
+        assertEquals("items|[]", QueryKey.canonical("items", new JSONArray()));
+    }
+}
@@ -0,0 +1,129 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.getcapacitor.JSObject;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RunTransactionTest {
+
+    private FirebaseFirestore db;
+    private Transaction transaction;
+    private DocumentSnapshot snapshot;
+    private CapacitorFirestore implementation;
+
+    @Before
+    public void initialize() throws Exception {
+        this.db = mock(FirebaseFirestore.class);
+        this.transaction = mock(Transaction.class);
+        this.snapshot = mock(DocumentSnapshot.class);
+        when(this.db.document(anyString())).thenReturn(mock(DocumentReference.class));
+        when(this.transaction.get(any(DocumentReference.class))).thenReturn(this.snapshot);
+        when(this.snapshot.exists()).thenReturn(true);
+        this.implementation = new CapacitorFirestore(this.db);
+    }
+
+    @Test
+    public void timestampConditionMatchesTheStoredTimestamp() throws Exception {
+        when(this.snapshot.get("updatedAt")).thenReturn(new Timestamp(1700000000, 500));
+
+        this.run(this.conditionalUpdate("updatedAt", this.timestamp(1700000000, 500)));
+
+        verify(this.transaction).update(any(DocumentReference.class), anyMap());
+    }
+
+    @Test
+    public void timestampConditionFailsForAnotherTimestamp() throws Exception {
+        when(this.snapshot.get("updatedAt")).thenReturn(new Timestamp(1700000000, 500));
+
+        Exception error = assertThrows(
+            IllegalStateException.class,
+            () -> this.run(this.conditionalUpdate("updatedAt", this.timestamp(1700000001, 500)))
+        );
+
+        assertEquals("transaction condition failed: items/a", error.getMessage());
+        verify(this.transaction, never()).update(any(DocumentReference.class), anyMap());
+    }
+
+    @Test
+    public void mapConditionComparesNestedValues() throws Exception {
+        // Firestore reads integers as Long, while the bridge sends small numbers as Integer.
+        Map<String, Object> stored = new HashMap<>();
+        stored.put("status", "open");
+        stored.put("count", 2L);
+        stored.put("tags", new ArrayList<>(Arrays.asList("a", "b")));
+        stored.put("closedAt", new Timestamp(1, 0));
+        when(this.snapshot.get("state")).thenReturn(stored);
+
+        JSONObject expected = new JSONObject("{\"status\":\"open\",\"count\":2,\"tags\":[\"a\",\"b\"]}");
+        expected.put("closedAt", this.timestamp(1, 0));
+
+        this.run(this.conditionalUpdate("state", expected));
+
+        verify(this.transaction).update(any(DocumentReference.class), anyMap());
+    }
+
+    @Test
+    public void mapConditionFailsForExtraFields() throws Exception {
+        Map<String, Object> stored = new HashMap<>();
+        stored.put("status", "open");
+        stored.put("count", 2L);
+        when(this.snapshot.get("state")).thenReturn(stored);
+
+        JSONObject expected = new JSONObject("{\"status\":\"open\"}");
+
+        assertThrows(IllegalStateException.class, () -> this.run(this.conditionalUpdate("state", expected)));
+    }
+
+    /**
+     * Runs the transaction function Firestore would be given, once, with the mocked transaction.
+     */
+    @SuppressWarnings("unchecked")
+    private void run(JSTransactionOperation operation) throws Exception {
+        this.implementation.runTransaction(Collections.emptyList(), Collections.singletonList(operation), 1, new AtomicInteger());
+
+        ArgumentCaptor<Transaction.Function<Object>> function = ArgumentCaptor.forClass(Transaction.Function.class);
+        verify(this.db).runTransaction(any(TransactionOptions.class), function.capture());
+        function.getValue().apply(this.transaction);
+    }
+
+    private JSTransactionOperation conditionalUpdate(String fieldPath, Object equals) {
+        JSObject data = new JSObject();
+        data.put("status", "closed");
+        return new JSTransactionOperation("update", "items/a", data, false, null, null, null, fieldPath, equals);
+    }
+
+    private JSObject timestamp(long seconds, int nanoseconds) {
+        JSObject timestamp = new JSObject();
+        timestamp.put("specialType", "Timestamp");
+        timestamp.put("seconds", seconds);
+        timestamp.put("nanoseconds", nanoseconds);
+        return timestamp;
+    }
+}
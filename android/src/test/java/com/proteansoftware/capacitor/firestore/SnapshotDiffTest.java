@@ -0,0 +1,182 @@
+package com.proteansoftware.capacitor.firestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.getcapacitor.JSObject;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SnapshotDiffTest {
+
+    private CapacitorFirestore implementation;
+    private Map<String, DocumentSnapshot> documents;
+
+    @Before
+    public void initialize() {
+        this.implementation = new CapacitorFirestore(mock(FirebaseFirestore.class));
+        this.documents = new HashMap<>();
+    }
+
+    @Test
+    public void unchangedSnapshotsHaveNoChanges() throws JSONException {
+        JSONArray changes = this.diff(Arrays.asList("a", "b", "c"), Arrays.asList("a", "b", "c"));
+
+        assertEquals(0, changes.length());
+    }
+
+    @Test
+    public void addedDocument() throws JSONException {
+        JSONArray changes = this.diff(Arrays.asList("a", "b"), Arrays.asList("a", "c", "b"));
+
+        assertEquals(1, changes.length());
+        this.assertChange(changes.getJSONObject(0), "added", -1, 1, "c");
+    }
+
+    @Test
+    public void removedDocuments() throws JSONException {
+        JSONArray changes = this.diff(Arrays.asList("a", "b", "c", "d"), Arrays.asList("a", "d"));
+
+        // The second removal applies to the list the first one left.
+        assertEquals(2, changes.length());
+        this.assertChange(changes.getJSONObject(0), "removed", 1, -1, "b");
+        this.assertChange(changes.getJSONObject(1), "removed", 1, -1, "c");
+    }
+
+    @Test
+    public void modifiedDocument() throws JSONException {
+        QuerySnapshot previous = this.snapshot(Arrays.asList("a", "b", "c"));
+        this.document("b", 2);
+
+        JSONArray changes = this.diff(previous, Arrays.asList("a", "b", "c"));
+
+        assertEquals(1, changes.length());
+        this.assertChange(changes.getJSONObject(0), "modified", 1, 1, "b");
+    }
+
+    @Test
+    public void movedDocument() throws JSONException {
+        JSONArray changes = this.diff(Arrays.asList("a", "b", "c"), Arrays.asList("c", "a", "b"));
+
+        // Only the moved document is reported, the others keep their place once it has moved.
+        assertEquals(1, changes.length());
+        this.assertChange(changes.getJSONObject(0), "modified", 2, 0, "c");
+    }
+
+    @Test
+    public void movedAfterARemovalAndAnAddition() throws JSONException {
+        JSONArray changes = this.diff(Arrays.asList("a", "b", "c", "d"), Arrays.asList("e", "d", "a", "c"));
+
+        assertEquals(3, changes.length());
+        this.assertChange(changes.getJSONObject(0), "removed", 1, -1, "b");
+        this.assertChange(changes.getJSONObject(1), "added", -1, 0, "e");
+        this.assertChange(changes.getJSONObject(2), "modified", 3, 1, "d");
+    }
+
+    @Test
+    public void applyingTheChangesGivesTheCurrentOrder() throws JSONException {
+        Random random = new Random(42);
+        List<String> paths = new ArrayList<>();
+        for (int x = 0; x < 40; x++) {
+            paths.add("p" + x);
+        }
+
+        for (int round = 0; round < 50; round++) {
+            List<String> previous = this.sample(paths, random);
+            QuerySnapshot previousSnapshot = this.snapshot(previous);
+            List<String> current = this.sample(paths, random);
+            for (String path : current) {
+                if (random.nextInt(5) == 0) {
+                    this.document(path, round + 2);
+                }
+            }
+
+            List<String> applied = new ArrayList<>(previous);
+            JSONArray changes = this.diff(previousSnapshot, current);
+            for (int x = 0; x < changes.length(); x++) {
+                JSONObject change = changes.getJSONObject(x);
+                String path = change.getJSONObject("document").getString("path");
+                int oldIndex = change.getInt("oldIndex");
+                if (oldIndex >= 0) {
+                    assertEquals(path, applied.remove(oldIndex));
+                }
+                if (change.getInt("newIndex") >= 0) {
+                    applied.add(change.getInt("newIndex"), path);
+                }
+            }
+
+            assertEquals(current, applied);
+        }
+    }
+
+    private List<String> sample(List<String> paths, Random random) {
+        List<String> sample = new ArrayList<>(paths);
+        Collections.shuffle(sample, random);
+        return new ArrayList<>(sample.subList(0, random.nextInt(paths.size() + 1)));
+    }
+
+    private void assertChange(JSONObject change, String type, int oldIndex, int newIndex, String path) throws JSONException {
+        assertEquals(type, change.getString("type"));
+        assertEquals(oldIndex, change.getInt("oldIndex"));
+        assertEquals(newIndex, change.getInt("newIndex"));
+        assertEquals(path, change.getJSONObject("document").getString("path"));
+    }
+
+    private JSONArray diff(List<String> previous, List<String> current) throws JSONException {
+        return this.diff(this.snapshot(previous), current);
+    }
+
+    private JSONArray diff(QuerySnapshot previous, List<String> current) throws JSONException {
+        JSObject result = this.implementation.ConvertSnapshotDiffToJSObject(previous, this.snapshot(current), null);
+        return result.getJSONArray("changes");
+    }
+
+    private QuerySnapshot snapshot(List<String> paths) {
+        List<DocumentSnapshot> snapshots = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            snapshots.add(this.documents.containsKey(path) ? this.documents.get(path) : this.document(path, 1));
+        }
+
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(snapshots);
+        when(snapshot.size()).thenReturn(snapshots.size());
+        return snapshot;
+    }
+
+    /**
+     * Creates the document, replacing any earlier version in the snapshots created afterwards.
+     */
+    private DocumentSnapshot document(String path, int version) {
+        DocumentReference reference = mock(DocumentReference.class);
+        when(reference.getPath()).thenReturn(path);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("version", (long) version);
+
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.getReference()).thenReturn(reference);
+        when(snapshot.getId()).thenReturn(path);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getData()).thenReturn(data);
+        this.documents.put(path, snapshot);
+        return snapshot;
+    }
+}
@@ -19,4 +19,17 @@ CAP_PLUGIN(CapacitorFirestorePlugin, "CapacitorFirestore",
            CAP_PLUGIN_METHOD(disableNetwork, CAPPluginReturnPromise);
            CAP_PLUGIN_METHOD(addDocumentSnapshotListener, CAPPluginReturnCallback);
            CAP_PLUGIN_METHOD(addCollectionSnapshotListener, CAPPluginReturnCallback);
+           CAP_PLUGIN_METHOD(writeBatch, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(addCollectionChangesListener, CAPPluginReturnCallback);
+           CAP_PLUGIN_METHOD(getCollectionPage, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(waitForPendingWrites, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getCacheStats, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getDocumentStaleWhileRevalidate, CAPPluginReturnCallback);
+           CAP_PLUGIN_METHOD(getCollectionStaleWhileRevalidate, CAPPluginReturnCallback);
+           CAP_PLUGIN_METHOD(getDocumentCacheStats, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getDocuments, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getAggregate, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(runTransaction, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getMetrics, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(resetMetrics, CAPPluginReturnPromise);
 )
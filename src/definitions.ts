@@ -1,7 +1,8 @@
 /* eslint-disable no-prototype-builtins */
 /// <reference types="@capacitor/cli" />
 
-import { Timestamp } from "firebase/firestore";
+import type { PluginListenerHandle } from "@capacitor/core";
+import { Bytes, DocumentReference as FirestoreDocumentReference, GeoPoint, Timestamp } from "firebase/firestore";
 
 declare module "@capacitor/cli" {
   export interface PluginsConfig {
@@ -33,199 +34,1415 @@ export interface FirestoreConfig {
    * @example "XxxxxxxxxxxXXxxxxxxxxx"
    */
   apiKey?: string;
+
+  /**
+   * Deliver snapshot listener and read/write results, and convert their data,
+   * on a dedicated background thread instead of the main thread.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   * @default false
+   */
+  useBackgroundExecutor?: boolean;
+
+  /**
+   * Where Firestore caches documents locally. A 'memory' cache is cleared
+   * when the app restarts, a 'persistent' cache is kept on disk.
+   *
+   * @since 5.1.0
+   * @default "persistent"
+   */
+  cacheMode?: CacheMode;
+
+  /**
+   * The size the local cache may grow to before least recently used documents
+   * are garbage collected. Use -1 for an unlimited cache: a 'persistent' cache
+   * is then never garbage collected and a 'memory' cache is garbage collected
+   * eagerly, as soon as documents are no longer in use.
+   *
+   * @since 5.1.0
+   * @default -1
+   */
+  cacheSizeBytes?: number;
+
+  /**
+   * The size in bytes of the native in-memory cache of document payloads used by
+   * getDocument with the 'cache' source. Documents are kept current by active
+   * snapshot listeners and invalidated by local writes. Use 0 to disable the
+   * cache.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   * @default 0
+   */
+  documentCacheSizeBytes?: number;
+
+  /**
+   * How long in milliseconds a document payload may be served from the native
+   * in-memory cache before it is read again.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   * @default 60000
+   */
+  documentCacheTtlMs?: number;
+
+  /**
+   * Record call counts, latencies, payload sizes and listener event rates for
+   * each plugin method, read with getMetrics. Recording measures the size of
+   * every payload, so it adds some overhead to each call.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   * @default false
+   */
+  metricsEnabled?: boolean;
+
+  /**
+   * When metrics are enabled and this is greater than 0, the metrics are also
+   * sent to the "metrics" listeners at this interval in milliseconds.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   * @default 0
+   */
+  metricsIntervalMs?: number;
+
+  /**
+   * Connect to a Firestore emulator on this host instead of the Firestore
+   * backend. From an Android emulator the host machine is 10.0.2.2.
+   *
+   * @since 5.1.0
+   * @example "10.0.2.2"
+   */
+  emulatorHost?: string;
+
+  /**
+   * The port of the Firestore emulator.
+   *
+   * @since 5.1.0
+   * @default 8080
+   */
+  emulatorPort?: number;
+}
+
+export type CacheMode = "memory" | "persistent";
+
+export type CallbackId = string;
+
+/**
+ * Filter conditions in a {@link QueryConstraint} clause are specified using the
+ * strings '&lt;', '&lt;=', '==', '!=', '&gt;=', '&gt;', 'array-contains',
+ * 'array-contains-any', 'in' and 'not-in'
+ */
+export type QueryOperators =
+  | "=="
+  | "!="
+  | ">="
+  | "<="
+  | "<"
+  | ">"
+  | "array-contains"
+  | "array-contains-any"
+  | "in"
+  | "not-in";
+
+/**
+ * The kind of a {@link QueryConstraint}. Constraints without a type are
+ * treated as 'where'.
+ */
+export type QueryConstraintType =
+  | "where"
+  | "orderBy"
+  | "limit"
+  | "limitToLast"
+  | "startAt"
+  | "startAfter"
+  | "endAt"
+  | "endBefore"
+  | "or"
+  | "and";
+
+export type OrderByDirection = "asc" | "desc";
+
+/**
+ *
+ * @param field The path to compare
+ * @param operator The operation string (e.g "&lt;", "&lt;=", "==", "&lt;",
+ * "&lt;=", "!=", "array-contains")
+ * @param value The value for comparison
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createQueryConstraint(field: string, operator: QueryOperators, value: any): QueryConstraint {
+  return {
+    fieldPath: field,
+    opStr: operator,
+    value: value,
+  };
+}
+
+/**
+ * Sorts the query results by the specified field.
+ * @param field The field to sort by
+ * @param direction Optional direction to sort by ('asc' or 'desc'). If not
+ * specified, order will be ascending.
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createOrderByConstraint(field: string, direction: OrderByDirection = "asc"): QueryConstraint {
+  return {
+    type: "orderBy",
+    fieldPath: field,
+    direction: direction,
+  };
+}
+
+/**
+ * Limits the query to return only the first matching documents.
+ * @param limit The maximum number of items to return
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createLimitConstraint(limit: number): QueryConstraint {
+  return {
+    type: "limit",
+    limit: limit,
+  };
+}
+
+/**
+ * Limits the query to return only the last matching documents. The query
+ * must have at least one orderBy constraint.
+ * @param limit The maximum number of items to return
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createLimitToLastConstraint(limit: number): QueryConstraint {
+  return {
+    type: "limitToLast",
+    limit: limit,
+  };
+}
+
+/**
+ * Starts the query results at the provided field values, relative to the
+ * order of the query's orderBy constraints.
+ * @param values The field values to start this query at
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createStartAtConstraint(...values: any[]): QueryConstraint {
+  return {
+    type: "startAt",
+    values: values,
+  };
+}
+
+/**
+ * Starts the query results after the provided field values, relative to the
+ * order of the query's orderBy constraints.
+ * @param values The field values to start this query after
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createStartAfterConstraint(...values: any[]): QueryConstraint {
+  return {
+    type: "startAfter",
+    values: values,
+  };
+}
+
+/**
+ * Ends the query results at the provided field values, relative to the
+ * order of the query's orderBy constraints.
+ * @param values The field values to end this query at
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createEndAtConstraint(...values: any[]): QueryConstraint {
+  return {
+    type: "endAt",
+    values: values,
+  };
+}
+
+/**
+ * Ends the query results before the provided field values, relative to the
+ * order of the query's orderBy constraints.
+ * @param values The field values to end this query before
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createEndBeforeConstraint(...values: any[]): QueryConstraint {
+  return {
+    type: "endBefore",
+    values: values,
+  };
+}
+
+/**
+ * Creates a disjunction of the given filter constraints. A document matches
+ * if it matches any of the filters.
+ * @param queryConstraints The 'where', 'or' and 'and' constraints to combine
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createOrConstraint(...queryConstraints: QueryConstraint[]): QueryConstraint {
+  return {
+    type: "or",
+    queryConstraints: queryConstraints,
+  };
+}
+
+/**
+ * Creates a conjunction of the given filter constraints. A document matches
+ * if it matches all of the filters.
+ * @param queryConstraints The 'where', 'or' and 'and' constraints to combine
+ * @returns The created {@link QueryConstraint}.
+ */
+export function createAndConstraint(...queryConstraints: QueryConstraint[]): QueryConstraint {
+  return {
+    type: "and",
+    queryConstraints: queryConstraints,
+  };
+}
+
+/**
+ * Creates an aggregate that counts the documents matching the query.
+ * @param alias The key of the count in {@link AggregateResult.data}
+ * @returns The created {@link AggregateSpec}.
+ */
+export function createCountAggregate(alias = "count"): AggregateSpec {
+  return {
+    alias: alias,
+    type: "count",
+  };
+}
+
+/**
+ * Creates an aggregate that sums a numeric field over the documents matching the query.
+ * @param alias The key of the sum in {@link AggregateResult.data}
+ * @param fieldPath The field to sum
+ * @returns The created {@link AggregateSpec}.
+ */
+export function createSumAggregate(alias: string, fieldPath: string): AggregateSpec {
+  return {
+    alias: alias,
+    type: "sum",
+    fieldPath: fieldPath,
+  };
+}
+
+/**
+ * Creates an aggregate that averages a numeric field over the documents matching the query.
+ * @param alias The key of the average in {@link AggregateResult.data}
+ * @param fieldPath The field to average
+ * @returns The created {@link AggregateSpec}.
+ */
+export function createAverageAggregate(alias: string, fieldPath: string): AggregateSpec {
+  return {
+    alias: alias,
+    type: "average",
+    fieldPath: fieldPath,
+  };
+}
+
+/**
+ * Creates a value that atomically adds to the number stored in a field when
+ * written with setDocument, updateDocument or addDocument. A missing field
+ * or a field that is not a number is set to the amount.
+ * @param amount The amount to add, may be negative
+ * @returns The created {@link FieldTransform}.
+ */
+export function createIncrementValue(amount: number): FieldTransform {
+  return {
+    specialType: "Increment",
+    value: amount,
+  };
+}
+
+/**
+ * Creates a value that atomically adds the elements to the array stored in a
+ * field, skipping elements it already contains.
+ * @param elements The elements to add
+ * @returns The created {@link FieldTransform}.
+ */
+export function createArrayUnionValue(...elements: any[]): FieldTransform {
+  return {
+    specialType: "ArrayUnion",
+    elements: elements,
+  };
+}
+
+/**
+ * Creates a value that atomically removes every instance of the elements from
+ * the array stored in a field.
+ * @param elements The elements to remove
+ * @returns The created {@link FieldTransform}.
+ */
+export function createArrayRemoveValue(...elements: any[]): FieldTransform {
+  return {
+    specialType: "ArrayRemove",
+    elements: elements,
+  };
+}
+
+/**
+ * Creates a value that is replaced by the server time when the write is committed.
+ * @returns The created {@link FieldTransform}.
+ */
+export function createServerTimestampValue(): FieldTransform {
+  return {
+    specialType: "ServerTimestamp",
+  };
+}
+
+/**
+ * Creates a value that deletes the field. Only valid in updateDocument, or in
+ * setDocument with merge.
+ * @returns The created {@link FieldTransform}.
+ */
+export function createDeleteFieldValue(): FieldTransform {
+  return {
+    specialType: "DeleteField",
+  };
+}
+
+export function prepDataForFirestore<T>(data: T): T {
+  for (const prop in data) {
+    data[prop] = prepValueForFirestore(data[prop]);
+
+    if (data[prop] === undefined) {
+      delete data[prop];
+    }
+  }
+
+  return data;
+}
+
+function prepValueForFirestore(value: any): any {
+  if (value instanceof Timestamp) {
+    return {
+      specialType: "Timestamp",
+      seconds: value.seconds,
+      nanoseconds: value.nanoseconds,
+    };
+  } else if (value instanceof GeoPoint) {
+    return {
+      specialType: "GeoPoint",
+      latitude: value.latitude,
+      longitude: value.longitude,
+    };
+  } else if (value instanceof Bytes) {
+    return {
+      specialType: "Blob",
+      base64: value.toBase64(),
+    };
+  } else if (value instanceof FirestoreDocumentReference) {
+    return {
+      specialType: "DocumentReference",
+      path: value.path,
+    };
+  } else if (typeof value === "number" && !isFinite(value)) {
+    // JSON has no NaN or Infinity, they would be sent as null.
+    return {
+      specialType: "Double",
+      value: String(value),
+    };
+  } else if (value instanceof Array) {
+    return value.map((item) => prepValueForFirestore(item));
+  } else if (value instanceof Object) {
+    return prepDataForFirestore(value);
+  }
+
+  return value;
+}
+
+/**
+ * Converts the values the native plugins send as objects with a specialType
+ * back into Firestore types, in place. DocumentReference values are left as
+ * `{ specialType: "DocumentReference", path }`, as creating a reference
+ * requires a Firestore instance.
+ * @param data The data of a document
+ */
+export function processDocumentData(data: any): void {
+  for (const key in data) {
+    if (data.hasOwnProperty(key)) {
+      data[key] = processDocumentValue(data[key]);
+    }
+  }
+}
+
+function processDocumentValue(value: any): any {
+  if (value instanceof Array) {
+    return value.map((item) => processDocumentValue(item));
+  } else if (!(value instanceof Object)) {
+    return value;
+  }
+
+  switch (value.specialType) {
+    case undefined:
+      processDocumentData(value);
+      return value;
+    case "Timestamp":
+      return new Timestamp(value.seconds, value.nanoseconds);
+    case "GeoPoint":
+      return new GeoPoint(value.latitude, value.longitude);
+    case "Blob":
+      return Bytes.fromBase64String(value.base64);
+    case "Double":
+      return Number(value.value);
+    case "DocumentReference":
+      return value;
+    default:
+      throw new Error("Unknown specialType: " + value.specialType);
+  }
+}
+
+/**
+ * A `QueryConstraint` is used to narrow the set of documents returned by a
+ * Firestore query.
+ */
+export interface QueryConstraint {
+  /**
+   * The kind of constraint, defaults to 'where'
+   */
+  type?: QueryConstraintType;
+
+  /**
+   * The path to compare for 'where', or to sort by for 'orderBy'
+   */
+  fieldPath?: string;
+
+  /**
+   * The operation string (e.g "&lt;", "&lt;=", "==", "&lt;",
+   * "&lt;=", "!=", "array-contains") for 'where'
+   */
+  opStr?: QueryOperators;
+
+  /**
+   * The value for comparison for 'where'. Must be an array for
+   * 'array-contains-any', 'in' and 'not-in'.
+   */
+  value?: any;
+
+  /**
+   * The sort direction for 'orderBy'
+   */
+  direction?: OrderByDirection;
+
+  /**
+   * The maximum number of items to return for 'limit' and 'limitToLast'
+   */
+  limit?: number;
+
+  /**
+   * The field values for 'startAt', 'startAfter', 'endAt' and 'endBefore'
+   */
+  values?: any[];
+
+  /**
+   * The filter constraints to combine for 'or' and 'and'
+   */
+  queryConstraints?: QueryConstraint[];
+}
+
+export interface CollectionQuery extends DocumnentQuery {
+  queryConstraints?: QueryConstraint[];
+}
+
+export interface CollectionListenerQuery extends CollectionQuery, SnapshotListenerOptions {
+  /**
+   * The field paths to read, using dots for nested fields. Only these fields
+   * are converted and returned in the document data. All fields are returned
+   * when unset.
+   */
+  fields?: string[];
+}
+
+export interface CollectionPageQuery extends GetCollectionQuery {
+  /**
+   * The maximum number of documents in the page.
+   *
+   * @default 100
+   */
+  pageSize?: number;
+
+  /**
+   * The cursor returned with the previous page. When set, the query of the
+   * previous page is reused and `queryConstraints` are ignored.
+   */
+  cursor?: string;
+}
+
+/**
+ * Where a read gets its data from. 'default' waits for the server when it
+ * is reachable and falls back to the cache, 'cache' reads only from the local
+ * cache and 'server' fails when the server cannot be reached.
+ */
+export type ReadSource = "default" | "cache" | "server";
+
+export interface GetDocumentQuery extends DocumnentQuery {
+  /**
+   * Where to read the document from. With 'cache', the document may be served
+   * from the native in-memory cache set up with documentCacheSizeBytes.
+   *
+   * @default "default"
+   */
+  source?: ReadSource;
+
+  /**
+   * The field paths to read, using dots for nested fields. Only these fields
+   * are converted and returned in the document data. All fields are returned
+   * when unset.
+   */
+  fields?: string[];
+}
+
+export interface GetDocumentsQuery {
+  /**
+   * The paths of the documents to read.
+   */
+  references: string[];
+
+  /**
+   * Where to read the documents from.
+   *
+   * @default "default"
+   */
+  source?: ReadSource;
+}
+
+export interface DocumentResult<T> {
+  /**
+   * The path of the document that was read.
+   */
+  reference: string;
+
+  /**
+   * The document, set when the read succeeded.
+   */
+  snapshot?: DocumentSnapshot<T>;
+
+  /**
+   * The error message, set when the read failed.
+   */
+  error?: string;
+}
+
+export interface GetDocumentsResult<T> {
+  /**
+   * One result for each requested document, in the same order as the references.
+   */
+  documents: DocumentResult<T>[];
+}
+
+export interface GetCollectionQuery extends CollectionQuery {
+  /**
+   * Where to read the results from.
+   *
+   * @default "default"
+   */
+  source?: ReadSource;
+
+  /**
+   * The field paths to read, using dots for nested fields. Only these fields
+   * are converted and returned in the document data. All fields are returned
+   * when unset.
+   */
+  fields?: string[];
+}
+
+export type AggregateType = "count" | "sum" | "average";
+
+export interface AggregateSpec {
+  /**
+   * The key of the result in {@link AggregateResult.data}.
+   */
+  alias: string;
+
+  /**
+   * The aggregation to compute.
+   */
+  type: AggregateType;
+
+  /**
+   * The field to aggregate, required for 'sum' and 'average'.
+   */
+  fieldPath?: string;
+}
+
+export interface GetAggregateQuery extends CollectionQuery {
+  /**
+   * Where to compute the aggregations, 'default' computes them on the server.
+   *
+   * @default "default"
+   */
+  source?: ReadSource;
+
+  /**
+   * The aggregations to compute over the documents matching the query.
+   * They are computed by the server unless the source is 'cache', in
+   * which case they are computed from the cached documents.
+   */
+  aggregates: AggregateSpec[];
+}
+
+export interface AggregateResult {
+  /**
+   * The value of each aggregation by alias. An average over no numeric
+   * values is null.
+   */
+  data: Record<string, number | null>;
+}
+
+export interface DocumnentQuery {
+  /**
+   * A reference to the document/collection
+   */
+  reference: string;
+}
+
+export interface SnapshotListenerOptions {
+  /**
+   * Delivers snapshots at most once per this many milliseconds. Snapshots
+   * received in between are coalesced and only the latest is delivered; a
+   * changes listener receives the changes merged since its previous event.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   */
+  throttleMs?: number;
+
+  /**
+   * Delivers a snapshot only once no newer snapshot has arrived for this
+   * many milliseconds, coalescing snapshots like `throttleMs`. Takes
+   * precedence over `throttleMs`.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   */
+  debounceMs?: number;
+
+  /**
+   * Also delivers snapshots in which only the metadata changed, such as a
+   * local write being acknowledged by the server, and sets `metadata` on
+   * every snapshot. These snapshots are skipped by default.
+   *
+   * @since 5.1.0
+   * @default false
+   */
+  includeMetadataChanges?: boolean;
+}
+
+export interface SnapshotMetadata {
+  /**
+   * Whether the snapshot contains local writes that have not been committed
+   * to the server yet.
+   */
+  hasPendingWrites: boolean;
+
+  /**
+   * Whether the snapshot was created from cached data rather than
+   * guaranteed up-to-date server data.
+   */
+  fromCache: boolean;
+}
+
+export interface DocumentRevalidateQuery extends DocumnentQuery {
+  /**
+   * The field paths to read, using dots for nested fields. Only these fields
+   * are converted and returned in the document data, and only a change to
+   * them passes the server document to the callback. All fields are returned
+   * when unset.
+   */
+  fields?: string[];
+}
+
+export interface CollectionRevalidateQuery extends CollectionQuery {
+  /**
+   * The field paths to read, using dots for nested fields. Only these fields
+   * are converted and returned in the document data, and only a change to
+   * them passes the server results to the callback. All fields are returned
+   * when unset.
+   */
+  fields?: string[];
+}
+
+export interface DocumentListenerQuery extends DocumnentQuery, SnapshotListenerOptions {
+  /**
+   * The field paths to read, using dots for nested fields. Only these fields
+   * are converted and returned in the document data. All fields are returned
+   * when unset.
+   */
+  fields?: string[];
+}
+
+export interface DocumentReference {
+  /**
+   * The id of the document.
+   *
+   * @since 1.0.0
+   */
+  id: string;
+
+  /**
+   * A string representing the path of the referenced document (relative
+   * to the root of the database).
+   * @since 1.0.0
+   */
+  path: string;
+}
+
+export interface DocumentSnapshot<T> extends DocumentReference {
+  /**
+   * The fields of the document or null if the document doesn't exist.
+   *
+   * @since 1.0.0
+   */
+  data: T | null;
+
+  /**
+   * Whether the snapshot was read from the local cache. Only set by
+   * stale-while-revalidate reads.
+   */
+  fromCache?: boolean;
+
+  /**
+   * The snapshot metadata. Only set by listeners with `includeMetadataChanges`.
+   */
+  metadata?: SnapshotMetadata;
+}
+
+export interface CollectionSnapshot<T> {
+  collection: DocumentSnapshot<T>[];
+
+  /**
+   * Whether the snapshot was read from the local cache. Only set by
+   * stale-while-revalidate reads.
+   */
+  fromCache?: boolean;
+
+  /**
+   * The snapshot metadata. Only set by listeners with `includeMetadataChanges`.
+   */
+  metadata?: SnapshotMetadata;
+}
+
+export type DocumentChangeType = "added" | "modified" | "removed";
+
+export interface DocumentChange<T> {
+  /**
+   * The type of change that occurred to the document.
+   */
+  type: DocumentChangeType;
+
+  /**
+   * The index of the document in the previous snapshot, or -1 if the
+   * document was added.
+   */
+  oldIndex: number;
+
+  /**
+   * The index of the document in the new snapshot, or -1 if the document
+   * was removed.
+   */
+  newIndex: number;
+
+  /**
+   * The document affected by this change.
+   */
+  document: DocumentSnapshot<T>;
+}
+
+export interface CollectionChanges<T> {
+  /**
+   * The full result of the query. Only set on the first event.
+   */
+  collection?: DocumentSnapshot<T>[];
+
+  /**
+   * The documents that changed since the previous event. Not set on the
+   * first event.
+   */
+  changes?: DocumentChange<T>[];
+
+  /**
+   * The snapshot metadata. Only set by listeners with `includeMetadataChanges`.
+   */
+  metadata?: SnapshotMetadata;
+}
+
+export interface CollectionPage<T> extends CollectionSnapshot<T> {
+  /**
+   * An opaque cursor to pass to `getCollectionPage` to read the next page.
+   * Not set when this is the last page.
+   */
+  cursor?: string;
+}
+
+export interface CustomToken {
+  token: string;
+}
+
+export interface RemoveSnapshotListener {
+  callbackId: CallbackId;
+}
+
+export interface UpdateDocument<T> extends DocumnentQuery {
+  /**
+   * An object containing the fields and values with which to
+   * update the document. Fields can contain dots to reference nested fields
+   * within the document
+   */
+  data: Partial<T>;
+}
+
+export interface SetDocument<T> extends DocumnentQuery {
+  /**
+   * A map of the fields and values for the document.
+   */
+  data: T;
+
+  /**
+   * Changes the behavior of a `setDocument()` call to only replace the
+   * values specified in its data argument. Fields omitted from the `setDocument()`
+   * call remain untouched. If your input sets any field to an empty map, all
+   * nested fields are overwritten.
+   */
+  merge?: boolean;
+}
+
+export interface AddDocument<T> extends DocumnentQuery {
+  /**
+   * An Object containing the data for the new document.
+   */
+  data: T;
+}
+
+export type BatchOperationType = "set" | "update" | "delete";
+
+export interface BatchOperation<T = any> extends DocumnentQuery {
+  /**
+   * The kind of write to perform on the referenced document.
+   */
+  type: BatchOperationType;
+
+  /**
+   * The data for a `set` or `update` operation. Ignored for `delete`.
+   */
+  data?: T | Partial<T>;
+
+  /**
+   * Merge the data into an existing document for a `set` operation.
+   */
+  merge?: boolean;
+}
+
+export interface WriteBatch {
+  /**
+   * The set, update and delete operations to commit. Operations are committed
+   * in order, in batches of at most 500 operations.
+   */
+  operations: BatchOperation[];
+}
+
+export interface BatchResult {
+  /**
+   * The number of operations committed in this batch.
+   */
+  operations: number;
+
+  /**
+   * Whether the batch was committed successfully.
+   */
+  success: boolean;
+
+  /**
+   * The error message if the batch failed to commit.
+   */
+  error?: string;
+}
+
+export interface WriteBatchResult {
+  /**
+   * One result for each committed batch, in order.
+   */
+  batches: BatchResult[];
+}
+
+export type FieldTransformType = "Increment" | "ArrayUnion" | "ArrayRemove" | "ServerTimestamp" | "DeleteField";
+
+/**
+ * A field value applied by Firestore when the write is committed, created
+ * with the create*Value helpers.
+ */
+export interface FieldTransform {
+  specialType: FieldTransformType;
+
+  /**
+   * The amount of an 'Increment'
+   */
+  value?: number;
+
+  /**
+   * The elements of an 'ArrayUnion' or 'ArrayRemove'
+   */
+  elements?: any[];
+}
+
+export type TransactionOperationType = "set" | "update" | "delete" | "increment";
+
+export interface TransactionCondition {
+  /**
+   * Requires the document to exist, or not to exist.
+   */
+  exists?: boolean;
+
+  /**
+   * The field compared with `equals`.
+   */
+  fieldPath?: string;
+
+  /**
+   * The value `fieldPath` must hold, in the same form as written data: special
+   * types such as Timestamp as prepared by prepDataForFirestore. Maps and
+   * arrays are compared by their contents.
+   */
+  equals?: any;
+}
+
+export interface TransactionOperation {
+  /**
+   * The type of the operation. 'increment' adds `value` to the number at
+   * `fieldPath` and requires the document to exist.
+   */
+  type: TransactionOperationType;
+
+  /**
+   * A reference to the document
+   */
+  reference: string;
+
+  /**
+   * The data for 'set' and 'update' operations
+   */
+  data?: any;
+
+  /**
+   * Whether a 'set' operation merges into the existing document
+   */
+  merge?: boolean;
+
+  /**
+   * The field an 'increment' operation changes
+   */
+  fieldPath?: string;
+
+  /**
+   * The amount an 'increment' operation adds, may be negative
+   */
+  value?: number;
+
+  /**
+   * A condition on the current document. When it does not hold, the
+   * transaction fails and none of its operations are applied.
+   */
+  condition?: TransactionCondition;
+}
+
+export interface Transaction {
+  /**
+   * References of documents to read in the transaction. Their snapshots are
+   * returned in {@link TransactionResult.documents}.
+   */
+  reads?: string[];
+
+  /**
+   * The operations to apply atomically.
+   */
+  operations: TransactionOperation[];
+
+  /**
+   * The maximum number of times the transaction is run when it fails because
+   * of contention on its documents.
+   *
+   * @default 5
+   */
+  maxAttempts?: number;
+}
+
+export interface TransactionResult<T> {
+  /**
+   * The snapshots of the documents in {@link Transaction.reads}, in order.
+   */
+  documents: DocumentSnapshot<T>[];
+
+  /**
+   * The number of times the transaction ran. Anything above 1 means it was
+   * retried because its documents were changed concurrently.
+   */
+  attempts: number;
+
+  /**
+   * The time from starting the transaction until it committed.
+   */
+  latencyMs: number;
 }
 
-export type CallbackId = string;
+export interface CacheStats {
+  /**
+   * The configured cache mode.
+   */
+  cacheMode: CacheMode;
 
-/**
- * Filter conditions in a {@link QueryConstraint} clause are specified using the
- * strings '&lt;', '&lt;=', '==', '&gt;=', '&gt;', 'array-contains'
- */
-export type QueryOperators = "==" | ">=" | "<=" | "<" | ">" | "array-contains";
+  /**
+   * The configured garbage collection threshold, -1 when unlimited.
+   */
+  cacheSizeBytes: number;
 
-/**
- *
- * @param field The path to compare
- * @param operator The operation string (e.g "&lt;", "&lt;=", "==", "&lt;",
- * "&lt;=", "!=", "array-contains")
- * @param value The value for comparison
- * @returns The created {@link QueryConstraint}.
- */
-export function createQueryConstraint(field: string, operator: QueryOperators, value: any): QueryConstraint {
-  return {
-    fieldPath: field,
-    opStr: operator,
-    value: value,
-  };
+  /**
+   * The size of the persistent cache on disk. Always -1 for a 'memory' cache.
+   *
+   * Only available for Android.
+   */
+  diskBytes?: number;
+
+  /**
+   * How the reads since initializeFirestore were served by the local cache.
+   * Firestore does not report the documents its garbage collection evicts,
+   * so reads that miss the cache are the measure of what it evicted.
+   *
+   * Only available for Android.
+   */
+  reads?: CacheReadStats;
 }
 
-export function prepDataForFirestore<T>(data: T): T {
-  for (const prop in data) {
-    if (data[prop] instanceof Timestamp) {
-      const timestamp = data[prop] as unknown as Timestamp;
-      data[prop] = {
-        specialType: "Timestamp",
-        seconds: timestamp.seconds,
-        nanoseconds: timestamp.nanoseconds,
-      } as any;
-    } else if (data[prop] instanceof Array) {
-      (data[prop] as unknown as any[]).forEach((element) => {
-        element = prepDataForFirestore(element);
-      });
-    } else if (data[prop] instanceof Object) {
-      data[prop] = prepDataForFirestore(data[prop]);
-    }
+export interface CacheReadStats {
+  /**
+   * Reads served from the local cache.
+   */
+  fromCache: number;
 
-    if (data[prop] === undefined) {
-      delete data[prop];
-    }
-  }
+  /**
+   * Reads served by the server.
+   */
+  fromServer: number;
 
-  return data;
+  /**
+   * Reads of a document that was not in the local cache, with a 'cache'
+   * source or while the server could not be reached. Query reads never
+   * miss, they return the cached documents that match.
+   */
+  misses: number;
 }
 
-export function processDocumentData(data: any): void {
-  for (const key in data) {
-    if (data.hasOwnProperty(key)) {
-      const element = data[key];
-      if (element instanceof Object && element.hasOwnProperty("specialType")) {
-        switch (element.specialType) {
-          case "Timestamp":
-            data[key] = new Timestamp(element.seconds, element.nanoseconds);
-            break;
-          default:
-            throw new Error("Unknown specialType: " + element.specialType);
-        }
-      } else if (element instanceof Array) {
-        (element as unknown as any[]).forEach((item) => {
-          processDocumentData(item);
-        });
-      }
-    }
-  }
+export interface DocumentCacheStats {
+  /**
+   * Reads served from the document cache.
+   */
+  hits: number;
+
+  /**
+   * Reads that were not cached or had expired.
+   */
+  misses: number;
+
+  /**
+   * Documents evicted to stay within the size budget.
+   */
+  evictions: number;
+
+  /**
+   * Documents currently cached.
+   */
+  entries: number;
+
+  /**
+   * The approximate size of the cached documents.
+   */
+  sizeBytes: number;
+
+  /**
+   * The configured size budget, 0 when the cache is disabled.
+   */
+  maxSizeBytes: number;
 }
 
 /**
- * A `QueryConstraint` is used to narrow the set of documents returned by a
- * Firestore query.
+ * Counts recorded values in powers of two: buckets[0] counts 0 and buckets[i]
+ * counts values from 2^(i-1) up to 2^i - 1.
  */
-export interface QueryConstraint {
+export interface MetricsHistogram {
+  count: number;
+  sum: number;
+  max: number;
+  mean: number;
+
   /**
-   * The path to compare
+   * Percentiles, estimated as the upper bound of the bucket they fall in.
    */
-  fieldPath: string;
+  p50: number;
+  p90: number;
+  p99: number;
+
+  buckets: number[];
+}
+
+/**
+ * The phases of a call, each timed from the end of the previous one:
+ * - decode: reading the options and data sent from the WebView
+ * - prepare: converting the data into Firestore values and sending the request
+ * - task: waiting for Firestore, or for the backend to commit a write
+ * - convert: converting the result sent back to the WebView
+ * - total: from the call until it is resolved
+ */
+export type MetricsPhase = "decode" | "prepare" | "task" | "convert" | "total";
+
+export interface MethodMetrics {
+  calls: number;
+  errors: number;
 
   /**
-   * The operation string (e.g "&lt;", "&lt;=", "==", "&lt;",
-   * "&lt;=", "!=", "array-contains")
+   * Latency histograms in microseconds for the phases the method went through.
    */
-  opStr: QueryOperators;
+  latencyUs: { [phase in MetricsPhase]?: MetricsHistogram };
 
   /**
-   * The value for comparison
+   * The estimated sizes in bytes of the call data, as UTF-16 JSON text.
    */
-  value: any;
-}
+  requestBytes: MetricsHistogram;
 
-export interface CollectionQuery extends DocumnentQuery {
-  queryConstraints?: QueryConstraint[];
+  /**
+   * The estimated sizes in bytes of the results and listener events, as UTF-16 JSON text.
+   */
+  responseBytes: MetricsHistogram;
+
+  /**
+   * Documents read or written per call, or per snapshot for listeners.
+   */
+  documents: MetricsHistogram;
+
+  /**
+   * Snapshot listener events. Received counts every native snapshot and
+   * delivered counts those sent to the WebView after throttling or debouncing.
+   */
+  events?: {
+    received: number;
+    delivered: number;
+    receivedPerSecond: number;
+    deliveredPerSecond: number;
+  };
 }
 
-export interface DocumnentQuery {
+export interface Metrics {
+  enabled: boolean;
+
   /**
-   * A reference to the document/collection
+   * When the metrics were last reset, in milliseconds since the epoch.
    */
-  reference: string;
+  since: number;
+
+  /**
+   * The metrics of each plugin method that was called.
+   */
+  methods: { [method: string]: MethodMetrics };
 }
 
-export interface DocumentReference {
+export interface PendingWrite {
   /**
-   * The id of the document.
+   * The path of the document being written.
+   */
+  path: string;
+
+  /**
+   * The kind of write: "set", "update", "delete" or "add".
    *
-   * @since 1.0.0
+   * @since 5.1.0
    */
-  id: string;
+  type: string;
 
   /**
-   * A string representing the path of the referenced document (relative
-   * to the root of the database).
-   * @since 1.0.0
+   * The estimated size of the data written, as JSON text. 0 for a delete.
+   *
+   * @since 5.1.0
    */
-  path: string;
-}
+  bytes: number;
 
-export interface DocumentSnapshot<T> extends DocumentReference {
   /**
-   * The fields of the document or null if the document doesn't exist.
+   * When the write was sent, in milliseconds since the epoch.
+   */
+  startedAt: number;
+
+  /**
+   * Whether the write was sent before the app last restarted. Restored writes
+   * are removed once waitForPendingWrites completes, as Firestore does not
+   * report when each of them is acknowledged.
    *
-   * @since 1.0.0
+   * @since 5.1.0
    */
-  data: T | null;
+  restored: boolean;
 }
 
-export interface CollectionSnapshot<T> {
-  collection: DocumentSnapshot<T>[];
-}
+export interface PendingWriteReplay {
+  /**
+   * When the network came back, in milliseconds since the epoch.
+   */
+  startedAt: number;
 
-export interface CustomToken {
-  token: string;
-}
+  /**
+   * How long the replay has been running, or ran for.
+   */
+  durationMs: number;
 
-export interface RemoveSnapshotListener {
-  callbackId: CallbackId;
-}
+  /**
+   * Whether writes are still being replayed.
+   */
+  inProgress: boolean;
 
-export interface UpdateDocument<T> extends DocumnentQuery {
   /**
-   * An object containing the fields and values with which to
-   * update the document. Fields can contain dots to reference nested fields
-   * within the document
+   * Whether every queued write was acknowledged. False when the network was
+   * lost again first.
    */
-  data: Partial<T>;
-}
+  drained: boolean;
 
-export interface SetDocument<T> extends DocumnentQuery {
   /**
-   * A map of the fields and values for the document.
+   * The number of writes queued when the network came back.
    */
-  data: T;
+  backlog: number;
 
   /**
-   * Changes the behavior of a `setDocument()` call to only replace the
-   * values specified in its data argument. Fields omitted from the `setDocument()`
-   * call remain untouched. If your input sets any field to an empty map, all
-   * nested fields are overwritten.
+   * The size of the writes queued when the network came back.
    */
-  merge?: boolean;
-}
+  backlogBytes: number;
 
-export interface AddDocument<T> extends DocumnentQuery {
   /**
-   * An Object containing the data for the new document.
+   * The number of writes acknowledged during the replay.
    */
-  data: T;
+  writes: number;
+
+  /**
+   * The size of the writes acknowledged during the replay.
+   */
+  bytes: number;
+
+  writesPerSecond: number;
+
+  bytesPerSecond: number;
 }
 
 export interface PendingActions {
   count: number;
+
+  /**
+   * The estimated size of the pending writes, as JSON text.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   */
+  bytes?: number;
+
+  /**
+   * How long the oldest pending write has been waiting, 0 when there is none.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   */
+  oldestAgeMs?: number;
+
+  /**
+   * The writes that have not been acknowledged by the backend yet, oldest first.
+   * Kept in a journal on disk, so writes queued by a persistent cache are still
+   * listed after the app restarts.
+   *
+   * Only available for Android.
+   */
+  writes?: PendingWrite[];
+
+  /**
+   * The replay in progress, or else the last one. A replay starts when the
+   * network comes back while writes are queued, and ends once they are all
+   * acknowledged or the network is lost again.
+   *
+   * Only available for Android.
+   *
+   * @since 5.1.0
+   */
+  replay?: PendingWriteReplay;
 }
 
 export type DocumentSnapshotCallback<T> = (data: DocumentSnapshot<T> | null, err?: any) => void;
 
 export type CollectionSnapshotCallback<T> = (data: CollectionSnapshot<T> | null, err?: any) => void;
 
+export type CollectionChangesCallback<T> = (data: CollectionChanges<T> | null, err?: any) => void;
+
 export interface CapacitorFirestorePlugin {
   /**
    * Gets the number of pending write actions (i.e. setDocument, addDocument, updateDocument, deleteDocument)
+   *
+   * On Web and iOS, only `count` is set: the sizes, ages and journal of the
+   * pending writes are only tracked on Android.
    */
   getPendingActions(): Promise<PendingActions>;
 
+  /**
+   * Waits until all currently pending writes for the active user have been
+   * acknowledged by the backend.
+   *
+   * Only available for Android and Web.
+   *
+   * @returns A `Promise` which resolves when all currently pending writes have
+   * been acknowledged by the backend (note that it won't resolve while you're offline).
+   * On Android, the writes restored from before a restart are removed from
+   * getPendingActions when it resolves.
+   */
+  waitForPendingWrites(): Promise<void>;
+
   /**
    * Configure the firestore instance with new configuration options.
    * @param options
    */
   initializeFirestore(options: FirestoreConfig): Promise<void>;
 
+  /**
+   * Gets the local cache configuration and its current size.
+   *
+   * Only available for Android and Web.
+   */
+  getCacheStats(): Promise<CacheStats>;
+
+  /**
+   * Gets the hit, miss and eviction counters of the native document cache.
+   *
+   * Only available for Android. Web has no native document cache, so the call
+   * is rejected as unimplemented there and on iOS.
+   */
+  getDocumentCacheStats(): Promise<DocumentCacheStats>;
+
+  /**
+   * Gets the metrics recorded since they were last reset. Requires metricsEnabled.
+   *
+   * Only available for Android. Metrics are recorded by the native bridge
+   * only, so the call is rejected as unimplemented on Web and iOS.
+   */
+  getMetrics(): Promise<Metrics>;
+
+  /**
+   * Clears the recorded metrics.
+   *
+   * Only available for Android. Rejected as unimplemented on Web and iOS.
+   */
+  resetMetrics(): Promise<void>;
+
+  /**
+   * Listens for the metrics sent every metricsIntervalMs.
+   *
+   * Only available for Android.
+   */
+  addListener(eventName: "metrics", listenerFunc: (metrics: Metrics) => void): Promise<PluginListenerHandle>;
+
   /**
    * Login to firestore using a customer JWT token.
    * @param options
@@ -242,7 +1459,34 @@ export interface CapacitorFirestorePlugin {
    * @param options
    * @returns The document snapshot
    */
-  getDocument<T>(options: DocumnentQuery): Promise<DocumentSnapshot<T>>;
+  getDocument<T>(options: GetDocumentQuery): Promise<DocumentSnapshot<T>>;
+
+  /**
+   * Reads several documents at once. A failed read does not fail the others,
+   * its error is returned in its result instead.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @returns A result for each document
+   */
+  getDocuments<T>(options: GetDocumentsQuery): Promise<GetDocumentsResult<T>>;
+
+  /**
+   * Reads the document from the local cache and passes it to the callback
+   * straight away, then reads it from the server and passes it to the
+   * callback again only if it differs from the cached document.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @param callback
+   * @returns The callback id
+   */
+  getDocumentStaleWhileRevalidate<T>(
+    options: DocumentRevalidateQuery,
+    callback: DocumentSnapshotCallback<T>
+  ): Promise<CallbackId>;
 
   /**
    * Updates fields in the document referred to by the specified DocumnentQuery.
@@ -281,20 +1525,84 @@ export interface CapacitorFirestorePlugin {
    */
   addDocument<T>(options: AddDocument<T>): Promise<DocumentReference>;
 
+  /**
+   * Commits a list of set, update and delete operations using write batches.
+   * Operations are split into batches of at most 500 operations, and each
+   * batch is committed atomically.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @returns A `Promise` resolved with one result per batch once every batch
+   * has been committed (note that it won't resolve while you're offline).
+   */
+  writeBatch(options: WriteBatch): Promise<WriteBatchResult>;
+
+  /**
+   * Reads documents and applies set, update, delete, increment and conditional
+   * operations in a single transaction, retried when it conflicts with other
+   * writes. When it fails, `attempts` and `latencyMs` are set on the error data.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @returns The read documents, the number of attempts and the latency
+   */
+  runTransaction<T>(options: Transaction): Promise<TransactionResult<T>>;
+
   /**
    * Listen for snapshot changes on a document.
    * @param options
    * @param callback
    * @returns The callback id which can be used to remove the listener.
    */
-  addDocumentSnapshotListener<T>(options: DocumnentQuery, callback: DocumentSnapshotCallback<T>): Promise<CallbackId>;
+  addDocumentSnapshotListener<T>(options: DocumentListenerQuery, callback: DocumentSnapshotCallback<T>): Promise<CallbackId>;
 
   /**
    * Executes the query and returns the results as a CollectionSnapshot
    * @param options
    * @returns The collection snapshot
    */
-  getCollection<T>(options: CollectionQuery): Promise<CollectionSnapshot<T>>;
+  getCollection<T>(options: GetCollectionQuery): Promise<CollectionSnapshot<T>>;
+
+  /**
+   * Computes count, sum and average aggregations over the documents matching
+   * the query without transferring the documents.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @returns The aggregation results
+   */
+  getAggregate(options: GetAggregateQuery): Promise<AggregateResult>;
+
+  /**
+   * Executes the query against the local cache and passes the results to the
+   * callback straight away, then executes it against the server and passes
+   * the results to the callback again only if they differ from the cached results.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @param callback
+   * @returns The callback id
+   */
+  getCollectionStaleWhileRevalidate<T>(
+    options: CollectionRevalidateQuery,
+    callback: CollectionSnapshotCallback<T>
+  ): Promise<CallbackId>;
+
+  /**
+   * Executes the query and returns one page of results, plus a cursor to read
+   * the next page with. The cursor is held natively, so the next page is read
+   * after the last document of this page without rebuilding the query.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @returns The page of the collection
+   */
+  getCollectionPage<T>(options: CollectionPageQuery): Promise<CollectionPage<T>>;
 
   /**
    * Listen for snapshot changes on a collection.
@@ -303,10 +1611,23 @@ export interface CapacitorFirestorePlugin {
    * @returns The callback id which can be used to remove the listener.
    */
   addCollectionSnapshotListener<T>(
-    options: CollectionQuery,
+    options: CollectionListenerQuery,
     callback: CollectionSnapshotCallback<T>
   ): Promise<CallbackId>;
 
+  /**
+   * Listen for changes on a collection. The first event contains the full
+   * result of the query, every later event contains only the documents that
+   * were added, modified or removed since the previous event.
+   *
+   * Only available for Android and Web.
+   *
+   * @param options
+   * @param callback
+   * @returns The callback id which can be used to remove the listener.
+   */
+  addCollectionChangesListener<T>(options: CollectionListenerQuery, callback: CollectionChangesCallback<T>): Promise<CallbackId>;
+
   /**
    * Stop listening for snapshot changes on a document or collection.
    * @param options
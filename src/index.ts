@@ -1,6 +1,27 @@
 import { registerPlugin } from "@capacitor/core";
 
-import { createQueryConstraint, prepDataForFirestore, processDocumentData } from "./definitions";
+import {
+  createQueryConstraint,
+  createOrderByConstraint,
+  createLimitConstraint,
+  createLimitToLastConstraint,
+  createStartAtConstraint,
+  createStartAfterConstraint,
+  createEndAtConstraint,
+  createEndBeforeConstraint,
+  createOrConstraint,
+  createAndConstraint,
+  createCountAggregate,
+  createSumAggregate,
+  createAverageAggregate,
+  createIncrementValue,
+  createArrayUnionValue,
+  createArrayRemoveValue,
+  createServerTimestampValue,
+  createDeleteFieldValue,
+  prepDataForFirestore,
+  processDocumentData,
+} from "./definitions";
 import type { CapacitorFirestorePlugin } from "./definitions";
 
 const CapacitorFirestore = registerPlugin<CapacitorFirestorePlugin>("CapacitorFirestore", {
@@ -8,4 +29,26 @@ const CapacitorFirestore = registerPlugin<CapacitorFirestorePlugin>("CapacitorFi
 });
 
 export * from "./definitions";
-export { CapacitorFirestore, createQueryConstraint, prepDataForFirestore, processDocumentData };
+export {
+  CapacitorFirestore,
+  createQueryConstraint,
+  createOrderByConstraint,
+  createLimitConstraint,
+  createLimitToLastConstraint,
+  createStartAtConstraint,
+  createStartAfterConstraint,
+  createEndAtConstraint,
+  createEndBeforeConstraint,
+  createOrConstraint,
+  createAndConstraint,
+  createCountAggregate,
+  createSumAggregate,
+  createAverageAggregate,
+  createIncrementValue,
+  createArrayUnionValue,
+  createArrayRemoveValue,
+  createServerTimestampValue,
+  createDeleteFieldValue,
+  prepDataForFirestore,
+  processDocumentData,
+};
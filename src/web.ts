@@ -2,31 +2,73 @@ import { WebPlugin } from "@capacitor/core";
 import { initializeApp, deleteApp, getApps } from "firebase/app";
 import type { FirebaseApp } from "firebase/app";
 import { getAuth, signInWithCustomToken, signOut } from "firebase/auth";
-import type { Firestore, Query, Unsubscribe } from "firebase/firestore";
+import type {
+  DocumentSnapshot as FirestoreDocumentSnapshot,
+  Firestore,
+  Query,
+  QueryFilterConstraint,
+  QueryNonFilterConstraint,
+  QuerySnapshot,
+  Unsubscribe,
+  WhereFilterOp,
+} from "firebase/firestore";
 import {
   enableNetwork,
   disableNetwork,
   initializeFirestore,
+  connectFirestoreEmulator,
   terminate,
   enableIndexedDbPersistence,
   onSnapshot,
   doc,
   getDoc,
+  getDocFromCache,
+  getDocFromServer,
   getDocs,
+  getDocsFromCache,
+  getDocsFromServer,
+  getCountFromServer,
   updateDoc,
   setDoc,
   deleteDoc,
   collection,
   query,
   where,
+  or,
+  and,
+  orderBy,
+  limit,
+  limitToLast,
+  startAt,
+  startAfter,
+  endAt,
+  endBefore,
+  writeBatch,
+  runTransaction,
+  increment,
+  arrayUnion,
+  arrayRemove,
+  serverTimestamp,
+  deleteField,
+  Timestamp,
+  GeoPoint,
+  Bytes,
+  DocumentReference as FirestoreDocumentReference,
+  refEqual,
+  waitForPendingWrites,
   CACHE_SIZE_UNLIMITED,
 } from "firebase/firestore";
 
 import type {
+  CacheMode,
+  CacheStats,
+  DocumentCacheStats,
+  Metrics,
   CallbackId,
   CapacitorFirestorePlugin,
   CollectionSnapshot,
   CollectionSnapshotCallback,
+  CollectionChangesCallback,
   CustomToken,
   DocumentSnapshot,
   DocumentSnapshotCallback,
@@ -37,16 +79,52 @@ import type {
   SetDocument,
   AddDocument,
   DocumnentQuery,
+  DocumentListenerQuery,
+  DocumentRevalidateQuery,
+  SnapshotListenerOptions,
+  SnapshotMetadata,
+  GetDocumentQuery,
+  GetDocumentsQuery,
+  GetDocumentsResult,
+  DocumentResult,
   CollectionQuery,
+  CollectionListenerQuery,
+  CollectionRevalidateQuery,
+  GetCollectionQuery,
+  GetAggregateQuery,
+  AggregateResult,
+  AggregateSpec,
+  ReadSource,
+  CollectionPage,
+  CollectionPageQuery,
+  QueryConstraint,
   PendingActions,
+  WriteBatch,
+  WriteBatchResult,
+  Transaction,
+  TransactionCondition,
+  TransactionResult,
+  BatchResult,
 } from "./definitions";
 
+const MAX_BATCH_OPERATIONS = 500;
+const MAX_PAGE_CURSORS = 100;
+const DEFAULT_PAGE_SIZE = 100;
+
+interface PageCursor {
+  query: Query;
+  lastDocument: FirestoreDocumentSnapshot;
+}
+
 export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFirestorePlugin {
   private app: FirebaseApp | null = null;
   private firestore: Firestore | null = null;
 
   private subscriptions: { [id: string]: Unsubscribe } = {};
   private pendingActions: number = 0;
+  private cacheMode: CacheMode = "persistent";
+  private cacheSizeBytes: number = CACHE_SIZE_UNLIMITED;
+  private pageCursors: Map<string, PageCursor> = new Map();
 
   public getPendingActions(): Promise<PendingActions> {
     return Promise.resolve({
@@ -54,6 +132,14 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
     });
   }
 
+  public waitForPendingWrites(): Promise<void> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    return waitForPendingWrites(this.firestore);
+  }
+
   public async initializeFirestore(options: FirestoreConfig): Promise<void> {
     if (this.firestore !== null) {
       await terminate(this.firestore);
@@ -78,26 +164,56 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
       "CapacitorFirestore"
     );
 
+    this.cacheMode = options.cacheMode ?? "persistent";
+    this.cacheSizeBytes = options.cacheSizeBytes ?? CACHE_SIZE_UNLIMITED;
+
     this.firestore = initializeFirestore(this.app, {
-      cacheSizeBytes: CACHE_SIZE_UNLIMITED,
+      cacheSizeBytes: this.cacheSizeBytes,
+    });
+
+    if (options.emulatorHost !== undefined) {
+      connectFirestoreEmulator(this.firestore, options.emulatorHost, options.emulatorPort ?? 8080);
+    }
+
+    if (this.cacheMode === "persistent") {
+      await enableIndexedDbPersistence(this.firestore);
+    }
+  }
+
+  public getCacheStats(): Promise<CacheStats> {
+    return Promise.resolve({
+      cacheMode: this.cacheMode,
+      cacheSizeBytes: this.cacheSizeBytes,
     });
+  }
 
-    await enableIndexedDbPersistence(this.firestore);
+  public async getDocumentCacheStats(): Promise<DocumentCacheStats> {
+    throw this.unimplemented("Not implemented on web.");
+  }
+
+  public async getMetrics(): Promise<Metrics> {
+    throw this.unimplemented("Not implemented on web.");
+  }
+
+  public async resetMetrics(): Promise<void> {
+    throw this.unimplemented("Not implemented on web.");
   }
 
   public addDocumentSnapshotListener<T>(
-    options: DocumnentQuery,
+    options: DocumentListenerQuery,
     callback: DocumentSnapshotCallback<T>
   ): Promise<CallbackId> {
     if (this.firestore === null) {
       return Promise.reject("Firestore not initialized");
     }
 
-    const unSubFunc = onSnapshot(doc(this.firestore, options.reference), (snapshot) => {
+    const metadataOptions = { includeMetadataChanges: options.includeMetadataChanges ?? false };
+    const unSubFunc = onSnapshot(doc(this.firestore, options.reference), metadataOptions, (snapshot) => {
       callback({
         id: snapshot.id,
         path: snapshot.ref.path,
-        data: snapshot.exists() ? (snapshot.data() as T) : null,
+        data: snapshot.exists() ? this.readData<T>(snapshot, options.fields) : null,
+        ...this.readMetadata(snapshot, options),
       });
     });
 
@@ -107,19 +223,65 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
     return Promise.resolve(id);
   }
 
-  public async getDocument<T>(options: DocumnentQuery): Promise<DocumentSnapshot<T>> {
+  public async getDocument<T>(options: GetDocumentQuery): Promise<DocumentSnapshot<T>> {
     if (this.firestore === null) {
       return Promise.reject("Firestore not initialized");
     }
 
-    const snapshot = await getDoc(doc(this.firestore, options.reference));
+    const reference = doc(this.firestore, options.reference);
+    let snapshot;
+    switch (options.source ?? "default") {
+      case "cache":
+        snapshot = await getDocFromCache(reference);
+        break;
+      case "server":
+        snapshot = await getDocFromServer(reference);
+        break;
+      default:
+        snapshot = await getDoc(reference);
+        break;
+    }
+
     return {
       id: snapshot.id,
       path: snapshot.ref.path,
-      data: snapshot.exists() ? (snapshot.data() as T) : null,
+      data: snapshot.exists() ? this.readData<T>(snapshot, options.fields) : null,
     };
   }
 
+  public async getDocuments<T>(options: GetDocumentsQuery): Promise<GetDocumentsResult<T>> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    const documents = await Promise.all(
+      options.references.map((reference) =>
+        this.getDocument<T>({ reference, source: options.source }).then(
+          (snapshot): DocumentResult<T> => ({ reference, snapshot }),
+          (error): DocumentResult<T> => ({ reference, error: error instanceof Error ? error.message : String(error) })
+        )
+      )
+    );
+
+    return { documents };
+  }
+
+  public getDocumentStaleWhileRevalidate<T>(
+    options: DocumentRevalidateQuery,
+    callback: DocumentSnapshotCallback<T>
+  ): Promise<CallbackId> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    const cached = this.getDocument<T>({ ...options, source: "cache" }).catch(() => null);
+    const server = this.getDocument<T>({ ...options, source: "server" });
+
+    this.revalidate(cached, server, callback);
+
+    return Promise.resolve(new Date().getTime().toString());
+  }
+
   public updateDocument<T>(options: UpdateDocument<T>): Promise<void> {
     return new Promise((resolve, reject) => {
       if (this.firestore === null) {
@@ -128,7 +290,7 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
 
       this.pendingActions++;
 
-      updateDoc(doc(this.firestore, options.reference), options.data as T)
+      updateDoc(doc(this.firestore, options.reference), this.convertSpecialTypes(options.data))
         .then(() => {
           this.pendingActions--;
         })
@@ -148,7 +310,7 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
 
       this.pendingActions++;
 
-      setDoc(doc(this.firestore, options.reference), options.data as T, {
+      setDoc(doc(this.firestore, options.reference), this.convertSpecialTypes(options.data), {
         merge: options.merge,
       })
         .then(() => {
@@ -191,7 +353,7 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
       this.pendingActions++;
       const docReference = doc(collection(this.firestore, options.reference));
 
-      setDoc(docReference, options.data as T)
+      setDoc(docReference, this.convertSpecialTypes(options.data))
         .then(() => {
           this.pendingActions--;
         })
@@ -207,33 +369,193 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
     });
   }
 
+  public async writeBatch(options: WriteBatch): Promise<WriteBatchResult> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    for (const operation of options.operations) {
+      if (!["set", "update", "delete"].includes(operation.type)) {
+        return Promise.reject("batch operation not support: " + operation.type);
+      }
+      if (operation.type !== "delete" && (operation.data === undefined || operation.data === null)) {
+        return Promise.reject("batch operation data must not be null: " + operation.type);
+      }
+    }
+
+    // Every batch is built before the first commit, so an operation that fails to convert commits nothing.
+    const batches: { batch: ReturnType<typeof writeBatch>; operations: number }[] = [];
+    try {
+      for (let start = 0; start < options.operations.length; start += MAX_BATCH_OPERATIONS) {
+        const chunk = options.operations.slice(start, start + MAX_BATCH_OPERATIONS);
+        const batch = writeBatch(this.firestore);
+
+        for (const operation of chunk) {
+          const reference = doc(this.firestore, operation.reference);
+          if (operation.type === "set") {
+            batch.set(reference, this.convertSpecialTypes(operation.data), { merge: operation.merge });
+          } else if (operation.type === "update") {
+            batch.update(reference, this.convertSpecialTypes(operation.data));
+          } else {
+            batch.delete(reference);
+          }
+        }
+
+        batches.push({ batch, operations: chunk.length });
+      }
+    } catch (err) {
+      return Promise.reject(err);
+    }
+
+    const commits = batches.map(({ batch, operations }) => {
+      this.pendingActions++;
+      return batch
+        .commit()
+        .then((): BatchResult => {
+          this.pendingActions--;
+          return { operations, success: true };
+        })
+        .catch((err): BatchResult => {
+          this.pendingActions--;
+          return { operations, success: false, error: err.message };
+        });
+    });
+
+    return {
+      batches: await Promise.all(commits),
+    };
+  }
+
+  public async runTransaction<T>(options: Transaction): Promise<TransactionResult<T>> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    const firestore = this.firestore;
+    const reads = options.reads ?? [];
+    const invalid = options.operations.find(
+      (operation) => !["set", "update", "delete", "increment"].includes(operation.type)
+    );
+    if (invalid !== undefined) {
+      return Promise.reject("transaction operation not support: " + invalid.type);
+    }
+
+    let attempts = 0;
+    const startedAt = Date.now();
+
+    const documents = await runTransaction(
+      firestore,
+      async (transaction) => {
+        attempts++;
+
+        // Firestore requires every read to happen before the first write.
+        const snapshots = new Map<string, FirestoreDocumentSnapshot>();
+        const references = reads.concat(
+          options.operations.filter((operation) => operation.condition).map((operation) => operation.reference)
+        );
+        for (const reference of references) {
+          if (!snapshots.has(reference)) {
+            snapshots.set(reference, await transaction.get(doc(firestore, reference)));
+          }
+        }
+
+        for (const operation of options.operations) {
+          const snapshot = snapshots.get(operation.reference);
+          if (operation.condition && snapshot && !this.matchesCondition(snapshot, operation.condition)) {
+            throw new Error("transaction condition failed: " + operation.reference);
+          }
+        }
+
+        for (const operation of options.operations) {
+          const reference = doc(firestore, operation.reference);
+          if (operation.type === "set") {
+            transaction.set(reference, this.convertSpecialTypes(operation.data), { merge: operation.merge });
+          } else if (operation.type === "update") {
+            transaction.update(reference, this.convertSpecialTypes(operation.data));
+          } else if (operation.type === "delete") {
+            transaction.delete(reference);
+          } else {
+            transaction.update(reference, operation.fieldPath as string, increment(operation.value ?? 0));
+          }
+        }
+
+        return reads.map((reference) => snapshots.get(reference) as FirestoreDocumentSnapshot);
+      },
+      { maxAttempts: options.maxAttempts }
+    );
+
+    return {
+      documents: documents.map((snapshot) => {
+        return {
+          id: snapshot.id,
+          path: snapshot.ref.path,
+          data: snapshot.exists() ? (snapshot.data() as T) : null,
+        };
+      }),
+      attempts,
+      latencyMs: Date.now() - startedAt,
+    };
+  }
+
+  private matchesCondition(snapshot: FirestoreDocumentSnapshot, condition: TransactionCondition): boolean {
+    if (condition.exists !== undefined && condition.exists !== snapshot.exists()) {
+      return false;
+    }
+
+    if (condition.fieldPath === undefined) {
+      return true;
+    }
+
+    const value = snapshot.get(condition.fieldPath);
+    const expected = condition.equals === undefined ? null : this.convertSpecialTypes(condition.equals);
+    return this.valuesEqual(value === undefined ? null : value, expected);
+  }
+
+  /**
+   * Compares a value read from Firestore with a condition value converted like written data.
+   */
+  private valuesEqual(value: any, expected: any): boolean {
+    if (value instanceof Array && expected instanceof Array) {
+      return value.length === expected.length && value.every((item, index) => this.valuesEqual(item, expected[index]));
+    } else if (!(value instanceof Object) || !(expected instanceof Object)) {
+      return value === expected;
+    } else if (Object.getPrototypeOf(value) !== Object.getPrototypeOf(expected)) {
+      return false;
+    } else if (value instanceof FirestoreDocumentReference) {
+      return refEqual(value, expected);
+    } else if (typeof value.isEqual === "function") {
+      // Timestamp, GeoPoint and Bytes.
+      return value.isEqual(expected);
+    }
+
+    const keys = Object.keys(value);
+    return (
+      keys.length === Object.keys(expected).length &&
+      keys.every((key) => expected.hasOwnProperty(key) && this.valuesEqual(value[key], expected[key]))
+    );
+  }
+
   public addCollectionSnapshotListener<T>(
-    options: CollectionQuery,
+    options: CollectionListenerQuery,
     callback: CollectionSnapshotCallback<T>
   ): Promise<CallbackId> {
     if (this.firestore === null) {
       return Promise.reject("Firestore not initialized");
     }
 
-    let collectionQuery: Query;
-    if (options.queryConstraints) {
-      const constraints = options.queryConstraints.map((constraint) =>
-        where(constraint.fieldPath, constraint.opStr, constraint.value)
-      );
-      collectionQuery = query(collection(this.firestore, options.reference), ...constraints);
-    } else {
-      collectionQuery = query(collection(this.firestore, options.reference));
-    }
+    const collectionQuery = this.buildQuery(this.firestore, options);
 
-    const unSubFunc = onSnapshot(collectionQuery, (snapshot) => {
+    const metadataOptions = { includeMetadataChanges: options.includeMetadataChanges ?? false };
+    const unSubFunc = onSnapshot(collectionQuery, metadataOptions, (snapshot) => {
       callback({
         collection: snapshot.docs.map((doc) => {
           return {
             id: doc.id,
             path: doc.ref.path,
-            data: doc.data() as T,
+            data: this.readData<T>(doc, options.fields),
           };
         }),
+        ...this.readMetadata(snapshot, options),
       });
     });
 
@@ -243,34 +565,314 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
     return Promise.resolve(id);
   }
 
-  public async getCollection<T>(options: CollectionQuery): Promise<CollectionSnapshot<T>> {
+  public addCollectionChangesListener<T>(
+    options: CollectionListenerQuery,
+    callback: CollectionChangesCallback<T>
+  ): Promise<CallbackId> {
     if (this.firestore === null) {
       return Promise.reject("Firestore not initialized");
     }
 
-    let collectionQuery: Query;
-    if (options.queryConstraints) {
-      const constraints = options.queryConstraints.map((constraint) =>
-        where(constraint.fieldPath, constraint.opStr, constraint.value)
-      );
-      collectionQuery = query(collection(this.firestore, options.reference), ...constraints);
-    } else {
-      collectionQuery = query(collection(this.firestore, options.reference));
+    const collectionQuery = this.buildQuery(this.firestore, options);
+
+    let initialSnapshotSent = false;
+    const metadataOptions = { includeMetadataChanges: options.includeMetadataChanges ?? false };
+    const unSubFunc = onSnapshot(collectionQuery, metadataOptions, (snapshot) => {
+      if (!initialSnapshotSent) {
+        initialSnapshotSent = true;
+        callback({
+          collection: snapshot.docs.map((doc) => {
+            return {
+              id: doc.id,
+              path: doc.ref.path,
+              data: this.readData<T>(doc, options.fields),
+            };
+          }),
+          ...this.readMetadata(snapshot, options),
+        });
+      } else {
+        callback({
+          changes: snapshot.docChanges().map((change) => {
+            return {
+              type: change.type,
+              oldIndex: change.oldIndex,
+              newIndex: change.newIndex,
+              document: {
+                id: change.doc.id,
+                path: change.doc.ref.path,
+                data: this.readData<T>(change.doc, options.fields),
+              },
+            };
+          }),
+          ...this.readMetadata(snapshot, options),
+        });
+      }
+    });
+
+    const id = new Date().getTime().toString();
+    this.subscriptions[id] = unSubFunc;
+
+    return Promise.resolve(id);
+  }
+
+  public async getCollection<T>(options: GetCollectionQuery): Promise<CollectionSnapshot<T>> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
     }
 
-    const snapshot = await getDocs(collectionQuery);
+    const collectionQuery = this.buildQuery(this.firestore, options);
+
+    const snapshot = await this.readQuery(collectionQuery, options.source);
 
     return {
       collection: snapshot.docs.map((doc) => {
         return {
           id: doc.id,
           path: doc.ref.path,
-          data: doc.data() as T,
+          data: this.readData<T>(doc, options.fields),
         };
       }),
     };
   }
 
+  public async getAggregate(options: GetAggregateQuery): Promise<AggregateResult> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    const collectionQuery = this.buildQuery(this.firestore, options);
+    const data: Record<string, number | null> = {};
+
+    // Only count is available as a server aggregation in the supported firebase versions,
+    // so other aggregations are computed from the documents.
+    if (options.source !== "cache" && options.aggregates.every((aggregate) => aggregate.type === "count")) {
+      const snapshot = await getCountFromServer(collectionQuery);
+      options.aggregates.forEach((aggregate) => (data[aggregate.alias] = snapshot.data().count));
+      return { data };
+    }
+
+    const snapshot = await this.readQuery(collectionQuery, options.source === "cache" ? "cache" : "server");
+    options.aggregates.forEach((aggregate) => (data[aggregate.alias] = this.computeAggregate(snapshot, aggregate)));
+    return { data };
+  }
+
+  private computeAggregate(snapshot: QuerySnapshot, aggregate: AggregateSpec): number | null {
+    if (aggregate.type === "count") {
+      return snapshot.size;
+    }
+
+    if (!aggregate.fieldPath) {
+      throw new Error(`fieldPath is required for aggregate type: ${aggregate.type}`);
+    }
+
+    let sum = 0;
+    let count = 0;
+    for (const document of snapshot.docs) {
+      const value = document.get(aggregate.fieldPath);
+      if (typeof value === "number") {
+        sum += value;
+        count++;
+      }
+    }
+
+    if (aggregate.type === "sum") {
+      return sum;
+    }
+
+    return count === 0 ? null : sum / count;
+  }
+
+  public getCollectionStaleWhileRevalidate<T>(
+    options: CollectionRevalidateQuery,
+    callback: CollectionSnapshotCallback<T>
+  ): Promise<CallbackId> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    const cached = this.getCollection<T>({ ...options, source: "cache" }).catch(() => null);
+    const server = this.getCollection<T>({ ...options, source: "server" });
+
+    this.revalidate(cached, server, callback);
+
+    return Promise.resolve(new Date().getTime().toString());
+  }
+
+  /**
+   * Replaces values marked with a specialType by the Timestamp or FieldValue they stand for.
+   */
+  private convertSpecialTypes(value: any): any {
+    if (value instanceof Array) {
+      return value.map((item) => this.convertSpecialTypes(item));
+    }
+
+    // Firestore values such as Timestamp, GeoPoint and FieldValue are passed as is.
+    if (!(value instanceof Object) || Object.getPrototypeOf(value) !== Object.prototype) {
+      return value;
+    }
+
+    switch (value.specialType) {
+      case undefined:
+        break;
+      case "Timestamp":
+        return new Timestamp(value.seconds, value.nanoseconds);
+      case "GeoPoint":
+        return new GeoPoint(value.latitude, value.longitude);
+      case "DocumentReference":
+        return doc(this.firestore as Firestore, value.path);
+      case "Blob":
+        return Bytes.fromBase64String(value.base64);
+      case "Double":
+        return Number(value.value);
+      case "Increment":
+        return increment(value.value);
+      case "ArrayUnion":
+        return arrayUnion(...value.elements.map((item: any) => this.convertSpecialTypes(item)));
+      case "ArrayRemove":
+        return arrayRemove(...value.elements.map((item: any) => this.convertSpecialTypes(item)));
+      case "ServerTimestamp":
+        return serverTimestamp();
+      case "DeleteField":
+        return deleteField();
+      default:
+        throw new Error("Unknown specialType: " + value.specialType);
+    }
+
+    const converted: any = {};
+    for (const key of Object.keys(value)) {
+      converted[key] = this.convertSpecialTypes(value[key]);
+    }
+    return converted;
+  }
+
+  private readMetadata(
+    snapshot: { metadata: { hasPendingWrites: boolean; fromCache: boolean } },
+    options: SnapshotListenerOptions
+  ): { metadata?: SnapshotMetadata } {
+    if (!options.includeMetadataChanges) {
+      return {};
+    }
+
+    return {
+      metadata: {
+        hasPendingWrites: snapshot.metadata.hasPendingWrites,
+        fromCache: snapshot.metadata.fromCache,
+      },
+    };
+  }
+
+  /**
+   * Reads the data of a snapshot, or only the given field paths when fields are set.
+   */
+  private readData<T>(snapshot: { data(): any; get(fieldPath: string): any }, fields?: string[]): T {
+    if (!fields) {
+      return snapshot.data() as T;
+    }
+
+    const data: any = {};
+    for (const field of fields) {
+      const value = snapshot.get(field);
+      if (value === undefined) {
+        continue;
+      }
+
+      const segments = field.split(".");
+      let parent = data;
+      for (const segment of segments.slice(0, -1)) {
+        if (typeof parent[segment] !== "object" || parent[segment] === null) {
+          parent[segment] = {};
+        }
+        parent = parent[segment];
+      }
+      parent[segments[segments.length - 1]] = value;
+    }
+
+    return data as T;
+  }
+
+  private readQuery(collectionQuery: Query, source?: ReadSource): Promise<QuerySnapshot> {
+    switch (source ?? "default") {
+      case "cache":
+        return getDocsFromCache(collectionQuery);
+      case "server":
+        return getDocsFromServer(collectionQuery);
+      default:
+        return getDocs(collectionQuery);
+    }
+  }
+
+  private async revalidate<S extends { fromCache?: boolean }>(
+    cached: Promise<S | null>,
+    server: Promise<S>,
+    callback: (data: S | null, err?: any) => void
+  ): Promise<void> {
+    const cachedSnapshot = await cached;
+    if (cachedSnapshot !== null) {
+      callback({ ...cachedSnapshot, fromCache: true });
+    }
+
+    try {
+      const serverSnapshot = await server;
+      if (cachedSnapshot === null || JSON.stringify(cachedSnapshot) !== JSON.stringify(serverSnapshot)) {
+        callback({ ...serverSnapshot, fromCache: false });
+      }
+    } catch (err) {
+      if (cachedSnapshot === null) {
+        callback(null, err);
+      }
+    }
+  }
+
+  public async getCollectionPage<T>(options: CollectionPageQuery): Promise<CollectionPage<T>> {
+    if (this.firestore === null) {
+      return Promise.reject("Firestore not initialized");
+    }
+
+    const pageSize = options.pageSize ?? DEFAULT_PAGE_SIZE;
+    let collectionQuery: Query;
+    let pageQuery: Query;
+
+    if (options.cursor !== undefined) {
+      const cursor = this.pageCursors.get(options.cursor);
+      if (cursor === undefined) {
+        return Promise.reject("Could not find page cursor: " + options.cursor);
+      }
+
+      collectionQuery = cursor.query;
+      pageQuery = query(cursor.query, startAfter(cursor.lastDocument), limit(pageSize));
+    } else {
+      collectionQuery = this.buildQuery(this.firestore, options);
+      pageQuery = query(collectionQuery, limit(pageSize));
+    }
+
+    const snapshot = await this.readQuery(pageQuery, options.source);
+    const result: CollectionPage<T> = {
+      collection: snapshot.docs.map((doc) => {
+        return {
+          id: doc.id,
+          path: doc.ref.path,
+          data: this.readData<T>(doc, options.fields),
+        };
+      }),
+    };
+
+    if (snapshot.docs.length >= pageSize) {
+      const cursor = new Date().getTime().toString() + Math.random().toString(36).substring(2);
+      this.pageCursors.set(cursor, {
+        query: collectionQuery,
+        lastDocument: snapshot.docs[snapshot.docs.length - 1],
+      });
+
+      if (this.pageCursors.size > MAX_PAGE_CURSORS) {
+        this.pageCursors.delete(this.pageCursors.keys().next().value);
+      }
+
+      result.cursor = cursor;
+    }
+
+    return result;
+  }
+
   public removeSnapshotListener(options: RemoveSnapshotListener): Promise<void> {
     const unSubFunc = this.subscriptions[options.callbackId];
 
@@ -295,6 +897,71 @@ export class CapacitorFirestoreWeb extends WebPlugin implements CapacitorFiresto
     return Promise.resolve();
   }
 
+  private buildQuery(firestore: Firestore, options: CollectionQuery): Query {
+    const reference = collection(firestore, options.reference);
+    if (!options.queryConstraints) {
+      return query(reference);
+    }
+
+    const filters: QueryFilterConstraint[] = [];
+    const constraints: QueryNonFilterConstraint[] = [];
+
+    for (const constraint of options.queryConstraints) {
+      const type = constraint.type ?? "where";
+      switch (type) {
+        case "where":
+        case "or":
+        case "and":
+          filters.push(this.buildFilter(constraint));
+          break;
+        case "orderBy":
+          constraints.push(orderBy(constraint.fieldPath as string, constraint.direction));
+          break;
+        case "limit":
+          constraints.push(limit(constraint.limit as number));
+          break;
+        case "limitToLast":
+          constraints.push(limitToLast(constraint.limit as number));
+          break;
+        case "startAt":
+          constraints.push(startAt(...(constraint.values ?? [])));
+          break;
+        case "startAfter":
+          constraints.push(startAfter(...(constraint.values ?? [])));
+          break;
+        case "endAt":
+          constraints.push(endAt(...(constraint.values ?? [])));
+          break;
+        case "endBefore":
+          constraints.push(endBefore(...(constraint.values ?? [])));
+          break;
+        default:
+          throw new Error("query constraint type not support: " + type);
+      }
+    }
+
+    if (filters.length === 0) {
+      return query(reference, ...constraints);
+    }
+
+    return query(reference, and(...filters), ...constraints);
+  }
+
+  private buildFilter(constraint: QueryConstraint): QueryFilterConstraint {
+    const children = (constraint.queryConstraints ?? []).map((child) => this.buildFilter(child));
+
+    switch (constraint.type ?? "where") {
+      case "or":
+        return or(...children);
+      case "and":
+        return and(...children);
+      case "where":
+        return where(constraint.fieldPath as string, constraint.opStr as WhereFilterOp, constraint.value);
+      default:
+        throw new Error("query constraint type not support in filter: " + constraint.type);
+    }
+  }
+
   public async signInWithCustomToken(options: CustomToken): Promise<void> {
     if (this.app === null) {
       return Promise.reject("app not initialized");